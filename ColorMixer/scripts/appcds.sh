@@ -0,0 +1,39 @@
+#!/bin/sh
+# Builds an AppCDS archive of the classes a ColorMixer run loads and compares time to first mix with
+# and without it.  Needs JDK 13 or later for -XX:ArchiveClassesAtExit, run from the ColorMixer directory
+# after compiling into bin.  CDS only archives classes loaded from jars, so bin is packaged into
+# colormixer.jar first.
+#
+#   scripts/appcds.sh                                  train with colormixer.test.StartupProbe
+#   scripts/appcds.sh colormixer.cli.ColorMixerCLI mix a.png b.png out.png
+#                                                      train with a real CLI run instead
+#
+# Workers then start with:
+#   java -XX:SharedArchiveFile=colormixer.jsa -cp colormixer.jar:src/Jama-1.0.3.jar <main class> ...
+# The archive is only valid for the JDK and class path it was created with, rebuild it when either changes.
+
+set -e
+
+CLASSES=${CLASSES:-bin}
+JAR=${JAR:-colormixer.jar}
+ARCHIVE=${ARCHIVE:-colormixer.jsa}
+JAVA=${JAVA:-java}
+CP="$JAR:src/Jama-1.0.3.jar"
+
+jar cf "$JAR" -C "$CLASSES" colormixer
+
+if [ $# -eq 0 ]; then
+	set -- colormixer.test.StartupProbe
+fi
+
+echo "Training run: $*"
+rm -f "$ARCHIVE"
+"$JAVA" -Djava.awt.headless=true -XX:ArchiveClassesAtExit="$ARCHIVE" -cp "$CP" "$@" > /dev/null
+
+echo
+echo "Without archive:"
+"$JAVA" -Djava.awt.headless=true -Xshare:auto -cp "$CP" colormixer.test.StartupProbe
+
+echo
+echo "With $ARCHIVE:"
+"$JAVA" -Djava.awt.headless=true -XX:SharedArchiveFile="$ARCHIVE" -cp "$CP" colormixer.test.StartupProbe
@@ -0,0 +1,94 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2013 Ben Holland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package colormixer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * A base for mixing models that implements the bulk kernel with the scalar one and the parallel kernel
+ * by running the bulk kernel over chunks of the ranges.  Models override the bulk kernel when they can
+ * do better than a loop over the scalar one.
+ */
+public abstract class AbstractMixingModel implements MixingModel {
+
+	// ranges shorter than this are mixed on the calling thread
+	private static final int PARALLEL_THRESHOLD = 65536;
+
+	private final String name;
+	private final String implementation;
+
+	/**
+	 * Creates a model
+	 * @param name The name of the model
+	 * @param implementation The name of this implementation of the model
+	 */
+	protected AbstractMixingModel(String name, String implementation){
+		this.name = name;
+		this.implementation = implementation;
+	}
+
+	@Override
+	public String getName(){
+		return name;
+	}
+
+	@Override
+	public String getImplementation(){
+		return implementation;
+	}
+
+	@Override
+	public void mix(int[] a, int aOffset, int[] b, int bOffset, int[] result, int resultOffset, int length){
+		for(int i=0; i<length; i++){
+			result[resultOffset + i] = mix(a[aOffset + i], b[bOffset + i]);
+		}
+	}
+
+	@Override
+	public void mix(final int[] a, final int aOffset, final int[] b, final int bOffset, final int[] result, final int resultOffset, int length, int threads){
+		if(threads <= 1 || length < PARALLEL_THRESHOLD){
+			mix(a, aOffset, b, bOffset, result, resultOffset, length);
+			return;
+		}
+		List<Callable<Void>> chunks = new ArrayList<Callable<Void>>();
+		int chunk = (length + threads - 1) / threads;
+		for(int chunkStart=0; chunkStart<length; chunkStart+=chunk){
+			final int from = chunkStart;
+			final int to = Math.min(length, chunkStart + chunk);
+			chunks.add(new Callable<Void>(){
+				@Override
+				public Void call() throws Exception {
+					mix(a, aOffset + from, b, bOffset + from, result, resultOffset + from, to - from);
+					return null;
+				}
+			});
+		}
+		Workers.invokeAll(chunks, "mix colors");
+	}
+
+	@Override
+	public String toString(){
+		return name + " (" + implementation + ")";
+	}
+
+}
@@ -0,0 +1,396 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2013 Ben Holland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package colormixer;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A compact binary format for batches of colors and Kubelka-Munk absorbance (K/S) values.
+ *
+ * A batch is an 8 byte header followed by the packed values:
+ *   4 bytes  magic "KMC" followed by the format code
+ *   4 bytes  number of entries (big endian)
+ * Formats:
+ *   RGB24   3 bytes per color (R, G, B)
+ *   ARGB32  4 bytes per color (A, R, G, B)
+ *   KS16    3 half precision floats per entry (A_r, A_g, A_b), big endian, large enough for the
+ *           absorbance of a 0 channel (about 5e4) but only accurate to about 3 significant digits
+ *   KS32    3 single precision floats per entry (A_r, A_g, A_b), big endian
+ *
+ * The encoders and decoders read and write ByteBuffers directly (heap or direct) from and to primitive
+ * arrays or KSBuffers, without creating objects per entry.  The position of the ByteBuffer is advanced
+ * past the batch, so several batches can be written back to back.
+ *
+ * Example Usage:
+ * ByteBuffer buffer = ByteBuffer.allocateDirect(ColorCodec.encodedSize(ColorCodec.Format.RGB24, rgb.length));
+ * ColorCodec.encodeRGB(ColorCodec.Format.RGB24, rgb, 0, rgb.length, buffer);
+ * buffer.flip();
+ * int[] decoded = new int[rgb.length];
+ * int count = ColorCodec.decodeRGB(buffer, decoded, 0, decoded.length);
+ */
+public class ColorCodec {
+
+	/**
+	 * The size of a batch header in bytes
+	 */
+	public static final int HEADER_SIZE = 8;
+
+	private static final int MAGIC = ('K' << 24) | ('M' << 16) | ('C' << 8);
+
+	/**
+	 * The formats of the values in a batch
+	 */
+	public static enum Format {
+		RGB24('1', 3),
+		ARGB32('2', 4),
+		KS16('3', 6),
+		KS32('4', 12);
+
+		private final int code;
+		private final int entrySize;
+
+		private Format(int code, int entrySize){
+			this.code = code;
+			this.entrySize = entrySize;
+		}
+
+		/**
+		 * Returns the number of bytes used by a single entry
+		 * @return
+		 */
+		public int getEntrySize(){
+			return entrySize;
+		}
+
+		private static Format forCode(int code){
+			for(Format format : values()){
+				if(format.code == code){
+					return format;
+				}
+			}
+			throw new IllegalArgumentException("Unknown color batch format " + code);
+		}
+	}
+
+	/**
+	 * Returns the number of bytes needed to encode a batch
+	 * @param format
+	 * @param count Number of entries in the batch
+	 * @return
+	 */
+	public static int encodedSize(Format format, int count){
+		return HEADER_SIZE + format.entrySize * count;
+	}
+
+	/**
+	 * Writes a batch header
+	 * @param format
+	 * @param count Number of entries following the header
+	 * @param buffer
+	 */
+	public static void writeHeader(Format format, int count, ByteBuffer buffer){
+		ByteOrder order = buffer.order();
+		buffer.order(ByteOrder.BIG_ENDIAN);
+		buffer.putInt(MAGIC | format.code);
+		buffer.putInt(count);
+		buffer.order(order);
+	}
+
+	/**
+	 * Returns the format of the batch at the position of a buffer without consuming anything
+	 * @param buffer
+	 * @return
+	 */
+	public static Format peekFormat(ByteBuffer buffer){
+		int magic = buffer.duplicate().order(ByteOrder.BIG_ENDIAN).getInt();
+		if((magic & 0xFFFFFF00) != MAGIC){
+			throw new IllegalArgumentException("Not a color batch");
+		}
+		return Format.forCode(magic & 0xFF);
+	}
+
+	/**
+	 * Consumes a batch header and returns the number of entries that follow it
+	 * @param buffer
+	 * @param expected The format the batch must have
+	 * @return
+	 */
+	public static int readCount(ByteBuffer buffer, Format expected){
+		Format format = peekFormat(buffer);
+		if(format != expected){
+			throw new IllegalArgumentException("Expected a " + expected + " batch but found " + format);
+		}
+		ByteOrder order = buffer.order();
+		buffer.order(ByteOrder.BIG_ENDIAN);
+		buffer.getInt();
+		int count = buffer.getInt();
+		buffer.order(order);
+		if(count < 0 || (long)count * format.entrySize > buffer.remaining()){
+			throw new BufferUnderflowException();
+		}
+		return count;
+	}
+
+	/**
+	 * Encodes packed RGB colors as an RGB24 or ARGB32 batch
+	 * @param format RGB24 or ARGB32
+	 * @param rgb Packed colors (0xAARRGGBB)
+	 * @param offset Index of the first color
+	 * @param length Number of colors
+	 * @param buffer Receives the batch
+	 */
+	public static void encodeRGB(Format format, int[] rgb, int offset, int length, ByteBuffer buffer){
+		if(format != Format.RGB24 && format != Format.ARGB32){
+			throw new IllegalArgumentException(format + " is not a color format");
+		}
+		writeHeader(format, length, buffer);
+		if(format == Format.ARGB32){
+			ByteOrder order = buffer.order();
+			buffer.order(ByteOrder.BIG_ENDIAN);
+			for(int i=offset; i<offset+length; i++){
+				buffer.putInt(rgb[i]);
+			}
+			buffer.order(order);
+		} else {
+			for(int i=offset; i<offset+length; i++){
+				int pixel = rgb[i];
+				buffer.put((byte)(pixel >> 16));
+				buffer.put((byte)(pixel >> 8));
+				buffer.put((byte)pixel);
+			}
+		}
+	}
+
+	/**
+	 * Decodes an RGB24 or ARGB32 batch into packed colors, RGB24 colors are decoded as opaque
+	 * @param buffer Holds the batch at its position
+	 * @param rgb Receives the colors
+	 * @param offset Index that receives the first color
+	 * @param length Capacity of rgb from offset on
+	 * @return The number of colors decoded
+	 */
+	public static int decodeRGB(ByteBuffer buffer, int[] rgb, int offset, int length){
+		Format format = peekFormat(buffer);
+		int count = readCount(buffer, format);
+		if(count > length){
+			throw new IllegalArgumentException("Batch of " + count + " colors does not fit into " + length);
+		}
+		if(format == Format.ARGB32){
+			ByteOrder order = buffer.order();
+			buffer.order(ByteOrder.BIG_ENDIAN);
+			for(int i=0; i<count; i++){
+				rgb[offset + i] = buffer.getInt();
+			}
+			buffer.order(order);
+		} else if(format == Format.RGB24){
+			for(int i=0; i<count; i++){
+				int red = buffer.get() & 0xFF;
+				int green = buffer.get() & 0xFF;
+				int blue = buffer.get() & 0xFF;
+				rgb[offset + i] = 0xFF000000 | (red << 16) | (green << 8) | blue;
+			}
+		} else {
+			throw new IllegalArgumentException(format + " is not a color format");
+		}
+		return count;
+	}
+
+	/**
+	 * Encodes interleaved absorbance triplets (A_r, A_g, A_b, A_r, ...) as a KS16 or KS32 batch
+	 * @param format KS16 or KS32
+	 * @param ks Interleaved absorbance values
+	 * @param offset Index of the first value
+	 * @param count Number of triplets
+	 * @param buffer Receives the batch
+	 */
+	public static void encodeKS(Format format, double[] ks, int offset, int count, ByteBuffer buffer){
+		checkKSFormat(format);
+		writeHeader(format, count, buffer);
+		for(int i=offset; i<offset+count*3; i++){
+			putValue(format, buffer, ks[i]);
+		}
+	}
+
+	/**
+	 * Encodes a run of pixels of a KSBuffer as a KS16 or KS32 batch
+	 * @param format KS16 or KS32
+	 * @param source The pixels to encode
+	 * @param pixel The first pixel to encode
+	 * @param count Number of pixels
+	 * @param buffer Receives the batch
+	 */
+	public static void encodeKS(Format format, KSBuffer source, long pixel, int count, ByteBuffer buffer){
+		checkKSFormat(format);
+		writeHeader(format, count, buffer);
+		for(long i=pixel; i<pixel+count; i++){
+			putValue(format, buffer, source.getAbsorbance(i, 0));
+			putValue(format, buffer, source.getAbsorbance(i, 1));
+			putValue(format, buffer, source.getAbsorbance(i, 2));
+		}
+	}
+
+	/**
+	 * Decodes a KS16 or KS32 batch into interleaved absorbance triplets
+	 * @param buffer Holds the batch at its position
+	 * @param ks Receives the absorbance values
+	 * @param offset Index that receives the first value
+	 * @param length Capacity of ks (in triplets) from offset on
+	 * @return The number of triplets decoded
+	 */
+	public static int decodeKS(ByteBuffer buffer, double[] ks, int offset, int length){
+		Format format = peekFormat(buffer);
+		checkKSFormat(format);
+		int count = readCount(buffer, format);
+		if(count > length){
+			throw new IllegalArgumentException("Batch of " + count + " entries does not fit into " + length);
+		}
+		for(int i=offset; i<offset+count*3; i++){
+			ks[i] = getValue(format, buffer);
+		}
+		return count;
+	}
+
+	/**
+	 * Decodes a KS16 or KS32 batch into a run of pixels of a KSBuffer
+	 * @param buffer Holds the batch at its position
+	 * @param target Receives the absorbance values
+	 * @param pixel The first pixel to write
+	 * @return The number of pixels written
+	 */
+	public static int decodeKS(ByteBuffer buffer, KSBuffer target, long pixel){
+		Format format = peekFormat(buffer);
+		checkKSFormat(format);
+		int count = readCount(buffer, format);
+		if(pixel < 0 || pixel + count > target.getPixels()){
+			throw new IndexOutOfBoundsException("Batch of " + count + " entries does not fit into the target");
+		}
+		for(long i=pixel; i<pixel+count; i++){
+			double A_r = getValue(format, buffer);
+			double A_g = getValue(format, buffer);
+			double A_b = getValue(format, buffer);
+			target.setAbsorbance(i, A_r, A_g, A_b);
+		}
+		return count;
+	}
+
+	/**
+	 * Converts a float to the bits of the nearest IEEE 754 half precision float
+	 * @param value
+	 * @return
+	 */
+	public static short toHalf(float value){
+		int bits = Float.floatToIntBits(value);
+		int sign = (bits >>> 16) & 0x8000;
+		int exponent = (bits >>> 23) & 0xFF;
+		int mantissa = bits & 0x7FFFFF;
+
+		if(exponent == 0xFF){
+			// infinity or NaN
+			return (short)(sign | 0x7C00 | (mantissa != 0 ? 0x200 : 0));
+		}
+		int halfExponent = exponent - 127 + 15;
+		if(halfExponent >= 0x1F){
+			// too large, round to infinity
+			return (short)(sign | 0x7C00);
+		}
+		if(halfExponent <= 0){
+			if(halfExponent < -10){
+				// too small, round to zero
+				return (short)sign;
+			}
+			// subnormal half, round to nearest even
+			mantissa |= 0x800000;
+			int shift = 14 - halfExponent;
+			int half = mantissa >> shift;
+			int remainder = mantissa & ((1 << shift) - 1);
+			int halfway = 1 << (shift - 1);
+			if(remainder > halfway || (remainder == halfway && (half & 1) != 0)){
+				half++;
+			}
+			return (short)(sign | half);
+		}
+		// normal half, round to nearest even (a carry into the exponent is still correct)
+		int half = (halfExponent << 10) | (mantissa >> 13);
+		int remainder = mantissa & 0x1FFF;
+		if(remainder > 0x1000 || (remainder == 0x1000 && (half & 1) != 0)){
+			half++;
+		}
+		return (short)(sign | half);
+	}
+
+	/**
+	 * Converts the bits of an IEEE 754 half precision float to a float
+	 * @param half
+	 * @return
+	 */
+	public static float fromHalf(short half){
+		int bits = half & 0xFFFF;
+		int sign = (bits & 0x8000) << 16;
+		int exponent = (bits >>> 10) & 0x1F;
+		int mantissa = bits & 0x3FF;
+
+		if(exponent == 0x1F){
+			return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+		}
+		if(exponent == 0){
+			if(mantissa == 0){
+				return Float.intBitsToFloat(sign);
+			}
+			// subnormal half, normalize it
+			float value = mantissa / 16777216.0f;
+			return sign == 0 ? value : -value;
+		}
+		return Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+	}
+
+	private static void checkKSFormat(Format format){
+		if(format != Format.KS16 && format != Format.KS32){
+			throw new IllegalArgumentException(format + " is not an absorbance format");
+		}
+	}
+
+	private static void putValue(Format format, ByteBuffer buffer, double value){
+		if(format == Format.KS16){
+			short half = toHalf((float)value);
+			buffer.put((byte)(half >> 8));
+			buffer.put((byte)half);
+		} else {
+			int bits = Float.floatToIntBits((float)value);
+			buffer.put((byte)(bits >> 24));
+			buffer.put((byte)(bits >> 16));
+			buffer.put((byte)(bits >> 8));
+			buffer.put((byte)bits);
+		}
+	}
+
+	private static double getValue(Format format, ByteBuffer buffer){
+		if(format == Format.KS16){
+			int high = buffer.get() & 0xFF;
+			int low = buffer.get() & 0xFF;
+			return fromHalf((short)((high << 8) | low));
+		}
+		int bits = ((buffer.get() & 0xFF) << 24) | ((buffer.get() & 0xFF) << 16) | ((buffer.get() & 0xFF) << 8) | (buffer.get() & 0xFF);
+		return Float.intBitsToFloat(bits);
+	}
+
+}
@@ -0,0 +1,217 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2013 Ben Holland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package colormixer;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A quantized 3D RGB color histogram.
+ *
+ * Each channel is reduced to the given number of bits, so the histogram has 2^(3*bits) bins no matter
+ * how many colors are added.  Besides the count, every bin keeps the sum of the exact colors that fell
+ * into it so that the mean color of a bin does not suffer from the quantization.  At most 6 bits are
+ * kept per channel, 2^18 bins of 32 bytes or 8 MB, and a parallel build holds one histogram per thread.
+ *
+ * Example Usage:
+ * ColorHistogram histogram = ColorHistogram.build(image, 6, 4);
+ * List<DominantColor> colors = DominantColor.extract(histogram, 8);
+ */
+public class ColorHistogram {
+
+	/**
+	 * The largest number of bits a histogram keeps per channel
+	 */
+	public static final int MAX_BITS_PER_CHANNEL = 6;
+
+	private final int bits;
+	private final int shift;
+	private final long[] counts;
+	private final long[] redSums;
+	private final long[] greenSums;
+	private final long[] blueSums;
+	private long total;
+
+	/**
+	 * Creates an empty histogram
+	 * @param bitsPerChannel The number of bits kept per channel (between 1 and MAX_BITS_PER_CHANNEL)
+	 */
+	public ColorHistogram(int bitsPerChannel){
+		checkBits(bitsPerChannel);
+		this.bits = bitsPerChannel;
+		this.shift = 8 - bitsPerChannel;
+		int bins = 1 << (3 * bitsPerChannel);
+		this.counts = new long[bins];
+		this.redSums = new long[bins];
+		this.greenSums = new long[bins];
+		this.blueSums = new long[bins];
+	}
+
+	private static void checkBits(int bitsPerChannel){
+		if(bitsPerChannel < 1 || bitsPerChannel > MAX_BITS_PER_CHANNEL){
+			throw new IllegalArgumentException("Bits per channel must be between 1 and " + MAX_BITS_PER_CHANNEL);
+		}
+	}
+
+	/**
+	 * Builds the histogram of an image in a single pass
+	 * @param image The image to analyze
+	 * @param bitsPerChannel The number of bits kept per channel (between 1 and MAX_BITS_PER_CHANNEL)
+	 * @param threads The number of worker threads (at most one per row), each fills its own histogram and the results are merged
+	 * @return
+	 */
+	public static ColorHistogram build(final BufferedImage image, final int bitsPerChannel, int threads){
+		checkBits(bitsPerChannel);
+		final int width = image.getWidth();
+		final int height = image.getHeight();
+		if(threads <= 1){
+			ColorHistogram histogram = new ColorHistogram(bitsPerChannel);
+			int[] row = new int[width];
+			for(int y=0; y<height; y++){
+				RasterConverter.readRow(image, y, row);
+				histogram.add(row, 0, width);
+			}
+			return histogram;
+		}
+
+		final AtomicInteger nextRow = new AtomicInteger();
+		List<ColorHistogram> results = Workers.invokeAll(new Callable<ColorHistogram>(){
+			@Override
+			public ColorHistogram call() throws Exception {
+				ColorHistogram histogram = new ColorHistogram(bitsPerChannel);
+				int[] row = new int[width];
+				int y;
+				while((y = nextRow.getAndIncrement()) < height){
+					RasterConverter.readRow(image, y, row);
+					histogram.add(row, 0, width);
+				}
+				return histogram;
+			}
+		}, Math.max(1, Math.min(threads, height)), "build histogram");
+		ColorHistogram histogram = results.get(0);
+		for(int i=1; i<results.size(); i++){
+			histogram.merge(results.get(i));
+		}
+		return histogram;
+	}
+
+	/**
+	 * Adds a single packed RGB color (0xRRGGBB, the alpha byte is ignored)
+	 * @param rgb
+	 */
+	public void add(int rgb){
+		int red = (rgb >> 16) & 0xFF;
+		int green = (rgb >> 8) & 0xFF;
+		int blue = rgb & 0xFF;
+		int bin = ((red >> shift) << (2 * bits)) | ((green >> shift) << bits) | (blue >> shift);
+		counts[bin]++;
+		redSums[bin] += red;
+		greenSums[bin] += green;
+		blueSums[bin] += blue;
+		total++;
+	}
+
+	/**
+	 * Adds a range of packed RGB colors
+	 * @param rgb
+	 * @param offset Index of the first color to add
+	 * @param length Number of colors to add
+	 */
+	public void add(int[] rgb, int offset, int length){
+		for(int i=offset; i<offset+length; i++){
+			add(rgb[i]);
+		}
+	}
+
+	/**
+	 * Adds all the colors counted by another histogram with the same number of bits into this one
+	 * @param other
+	 */
+	public void merge(ColorHistogram other){
+		if(other.bits != bits){
+			throw new IllegalArgumentException("Histograms must have the same number of bits per channel");
+		}
+		for(int bin=0; bin<counts.length; bin++){
+			counts[bin] += other.counts[bin];
+			redSums[bin] += other.redSums[bin];
+			greenSums[bin] += other.greenSums[bin];
+			blueSums[bin] += other.blueSums[bin];
+		}
+		total += other.total;
+	}
+
+	/**
+	 * Returns the number of bits kept per channel
+	 * @return
+	 */
+	public int getBitsPerChannel(){
+		return bits;
+	}
+
+	/**
+	 * Returns the number of bins
+	 * @return
+	 */
+	public int getBinCount(){
+		return counts.length;
+	}
+
+	/**
+	 * Returns the total number of colors added
+	 * @return
+	 */
+	public long getTotal(){
+		return total;
+	}
+
+	/**
+	 * Returns the number of colors that fell into a bin
+	 * @param bin
+	 * @return
+	 */
+	public long getCount(int bin){
+		return counts[bin];
+	}
+
+	/**
+	 * Returns the mean of the colors that fell into a bin as a packed RGB color, or the bin center if it is empty
+	 * @param bin
+	 * @return
+	 */
+	public int getColor(int bin){
+		long count = counts[bin];
+		int mask = (1 << bits) - 1;
+		if(count == 0){
+			int half = shift == 0 ? 0 : 1 << (shift - 1);
+			int red = (((bin >> (2 * bits)) & mask) << shift) + half;
+			int green = (((bin >> bits) & mask) << shift) + half;
+			int blue = ((bin & mask) << shift) + half;
+			return (red << 16) | (green << 8) | blue;
+		}
+		int red = (int)((redSums[bin] + count / 2) / count);
+		int green = (int)((greenSums[bin] + count / 2) / count);
+		int blue = (int)((blueSums[bin] + count / 2) / count);
+		return (red << 16) | (green << 8) | blue;
+	}
+
+}
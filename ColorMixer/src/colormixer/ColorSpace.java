@@ -1,8 +1,6 @@
 package colormixer;
 import java.awt.Color;
 
-import Jama.Matrix;
-
 public class ColorSpace {
 
 	public static void main(String[] args){
@@ -23,10 +21,16 @@ public class ColorSpace {
 		//System.out.println("R: " + (int)RGB[0] + ", G: " + (int)RGB[1] + ", B: " + (int)RGB[2]);
 	}
 
+	/**
+	 * The observer matrix of ColorSpaceProfile.STANDARD_OBSERVER_1931, the profile copies it once when it is loaded
+	 */
 	public static final double[][] standardObserver1931Values = {{0.489989,  0.310008, 0.2},
 																 {0.0176962, 0.81240,  0.010},
 																 {0.0,       0.01,     0.99}};
 
+	// Profile used to convert between RGB and XYZ
+	private ColorSpaceProfile profile;
+
 	// Tristimulus XYZ Color Model components
 	private double tristimulusX;
 	private double tristimulusY;
@@ -97,10 +101,21 @@ public class ColorSpace {
 
 	private ColorSpace(){
 		// make the constructor private
+		KMMetrics.allocated(KMMetrics.Allocation.COLORSPACE, 1);
+	}
+	
+	public ColorSpaceProfile getProfile() {
+		return profile;
 	}
 	
 	public static ColorSpace createNewColorSpaceFromRGB(int R, int G, int B){
+		return createNewColorSpaceFromRGB(ColorSpaceProfile.STANDARD_OBSERVER_1931, R, G, B);
+	}
+	
+	public static ColorSpace createNewColorSpaceFromRGB(ColorSpaceProfile profile, int R, int G, int B){
+		long start = KMMetrics.start();
 		ColorSpace colorspace = new ColorSpace();
+		colorspace.profile = profile;
 		colorspace.RGB_R = R;
 		colorspace.RGB_G = G;
 		colorspace.RGB_B = B;
@@ -110,27 +125,30 @@ public class ColorSpace {
 		colorspace.RYB_Y = (int)RGBToRYB[1];
 		colorspace.RYB_B = (int)RGBToRYB[2];
 
-		// compute XYZ using the linear equation in the case of the standard observer
-		double[][] RGBValues = {{R},{G},{B}};
-		Matrix RGB = new Matrix(RGBValues);
-		Matrix standardObserver1931 = new Matrix(standardObserver1931Values);
-
-		// solve for XYZ
-		Matrix XYZ = standardObserver1931.times(RGB);
-		colorspace.tristimulusX = XYZ.get(0, 0);
-		colorspace.tristimulusY = XYZ.get(1, 0);
-		colorspace.tristimulusZ = XYZ.get(2, 0);
+		// compute XYZ using the linear equation of the profile
+		double[] XYZ = new double[3];
+		profile.toXYZ(R, G, B, XYZ);
+		colorspace.tristimulusX = XYZ[0];
+		colorspace.tristimulusY = XYZ[1];
+		colorspace.tristimulusZ = XYZ[2];
 
 		// calculate chromaticity coordinates
 		colorspace.chromaticityX = calculateChromaticityX(colorspace.tristimulusX, colorspace.tristimulusY, colorspace.tristimulusZ);
 		colorspace.chromaticityY = calculateChromaticityY(colorspace.tristimulusX, colorspace.tristimulusY, colorspace.tristimulusZ);
 		colorspace.chromaticityZ = calculateChromaticityZ(colorspace.tristimulusX, colorspace.tristimulusY, colorspace.tristimulusZ);
 		
+		KMMetrics.stop(KMMetrics.Operation.COLORSPACE_FROM_RGB, start);
 		return colorspace;
 	}
 	
 	public static ColorSpace createNewColorSpaceFromRYB(int R, int Y, int B){
+		return createNewColorSpaceFromRYB(ColorSpaceProfile.STANDARD_OBSERVER_1931, R, Y, B);
+	}
+	
+	public static ColorSpace createNewColorSpaceFromRYB(ColorSpaceProfile profile, int R, int Y, int B){
+		long start = KMMetrics.start();
 		ColorSpace colorspace = new ColorSpace();
+		colorspace.profile = profile;
 		colorspace.RYB_R = R;
 		colorspace.RYB_Y = Y;
 		colorspace.RYB_B = B;
@@ -140,27 +158,30 @@ public class ColorSpace {
 		colorspace.RGB_G = (int)RYBToRGB[1];
 		colorspace.RGB_B = (int)RYBToRGB[2];
 
-		// compute XYZ using the linear equation in the case of the standard observer
-		double[][] RGBValues = {{colorspace.RGB_R},{colorspace.RGB_G},{colorspace.RGB_B}};
-		Matrix RGB = new Matrix(RGBValues);
-		Matrix standardObserver1931 = new Matrix(standardObserver1931Values);
-
-		// solve for XYZ
-		Matrix XYZ = standardObserver1931.times(RGB);
-		colorspace.tristimulusX = XYZ.get(0, 0);
-		colorspace.tristimulusY = XYZ.get(1, 0);
-		colorspace.tristimulusZ = XYZ.get(2, 0);
+		// compute XYZ using the linear equation of the profile
+		double[] XYZ = new double[3];
+		profile.toXYZ(colorspace.RGB_R, colorspace.RGB_G, colorspace.RGB_B, XYZ);
+		colorspace.tristimulusX = XYZ[0];
+		colorspace.tristimulusY = XYZ[1];
+		colorspace.tristimulusZ = XYZ[2];
 
 		// calculate chromaticity coordinates
 		colorspace.chromaticityX = calculateChromaticityX(colorspace.tristimulusX, colorspace.tristimulusY, colorspace.tristimulusZ);
 		colorspace.chromaticityY = calculateChromaticityY(colorspace.tristimulusX, colorspace.tristimulusY, colorspace.tristimulusZ);
 		colorspace.chromaticityZ = calculateChromaticityZ(colorspace.tristimulusX, colorspace.tristimulusY, colorspace.tristimulusZ);
 		
+		KMMetrics.stop(KMMetrics.Operation.COLORSPACE_FROM_RYB, start);
 		return colorspace;
 	}
 
 	public static ColorSpace createNewColorSpaceFromTristimulusXYZ(double X, double Y, double Z){
+		return createNewColorSpaceFromTristimulusXYZ(ColorSpaceProfile.STANDARD_OBSERVER_1931, X, Y, Z);
+	}
+
+	public static ColorSpace createNewColorSpaceFromTristimulusXYZ(ColorSpaceProfile profile, double X, double Y, double Z){
+		long start = KMMetrics.start();
 		ColorSpace colorspace = new ColorSpace();
+		colorspace.profile = profile;
 		colorspace.tristimulusX = X;
 		colorspace.tristimulusY = Y;
 		colorspace.tristimulusZ = Z;
@@ -170,22 +191,19 @@ public class ColorSpace {
 		colorspace.chromaticityY = calculateChromaticityY(X, Y, Z);
 		colorspace.chromaticityZ = calculateChromaticityZ(X, Y, Z);
 
-		// compute RGB using the linear equation in the case of the standard observer
-		double[][] XYZValues = {{X},{Y},{Z}};
-		Matrix XYZ = new Matrix(XYZValues);
-		Matrix standardObserver1931Inverse = new Matrix(standardObserver1931Values).inverse();
-
-		// solve for RGB
-		Matrix RGB = standardObserver1931Inverse.times(XYZ);
-		colorspace.RGB_R = (int)RGB.get(0, 0);
-		colorspace.RGB_G = (int)RGB.get(1, 0);
-		colorspace.RGB_B = (int)RGB.get(2, 0);
+		// compute RGB using the precomputed inverse of the profile
+		double[] RGB = new double[3];
+		profile.toRGB(X, Y, Z, RGB);
+		colorspace.RGB_R = (int)RGB[0];
+		colorspace.RGB_G = (int)RGB[1];
+		colorspace.RGB_B = (int)RGB[2];
 		
 		double[] RYB = rgbToRYB(colorspace.RGB_R, colorspace.RGB_G, colorspace.RGB_B);
 		colorspace.RYB_R = (int)RYB[0];
 		colorspace.RYB_Y = (int)RYB[1];
 		colorspace.RYB_B = (int)RYB[2];
 		
+		KMMetrics.stop(KMMetrics.Operation.COLORSPACE_FROM_XYZ, start);
 		return colorspace;
 	}
 
@@ -203,6 +221,15 @@ public class ColorSpace {
 	
 	// credit to http://www.insanit.net/tag/rgb-to-ryb/
 	private static double[] rgbToRYB (double R, double G, double B){
+		double[] RYB = new double[3];
+		rgbToRYB(R, G, B, RYB);
+		return RYB;
+	}
+	
+	/**
+	 * Converts RGB to RYB without allocating, writing the R, Y and B components into the given array
+	 */
+	static void rgbToRYB (double R, double G, double B, double[] RYB){
 		// remove the whiteness from the color
 		double w = Math.min(Math.min(R, G), B);
 		double r = R - w;
@@ -242,16 +269,22 @@ public class ColorSpace {
 	    y += w;
 	    b += w;
 		
-		double[] RYB = new double[3];
 		RYB[0] = r;
 		RYB[1] = y;
 		RYB[2] = b;
-		
-		return RYB;
 	}
 	
 	// credit to http://www.insanit.net/tag/rgb-to-ryb/
 	private static double[] rybToRGB (double R, double Y, double B){
+		double[] RGB = new double[3];
+		rybToRGB(R, Y, B, RGB);
+		return RGB;
+	}
+	
+	/**
+	 * Converts RYB to RGB without allocating, writing the R, G and B components into the given array
+	 */
+	static void rybToRGB (double R, double Y, double B, double[] RGB){
 		// remove the whiteness from the color
 		double w = Math.min(Math.min(R, Y), B);
 		double r = R - w;
@@ -288,12 +321,9 @@ public class ColorSpace {
 		g += w;
 		b += w;
 		
-		double[] RGB = new double[3];
 		RGB[0] = r;
 		RGB[1] = g;
 		RGB[2] = b;
-		
-		return RGB;
 	}
 
 }
\ No newline at end of file
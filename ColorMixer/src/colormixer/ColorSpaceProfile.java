@@ -0,0 +1,358 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2013 Ben Holland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package colormixer;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import Jama.Matrix;
+
+/**
+ * An immutable RGB to XYZ conversion profile, i.e. an observer matrix together with the white point it implies.
+ *
+ * The forward and inverse 3x3 transforms are computed once when the profile is created, so converting
+ * with a profile is plain arithmetic with no matrices created per call.  The built in profiles use
+ * precomputed matrices, Jama is only loaded when create is called.  RGB components are on the 0-255
+ * scale used throughout ColorSpace, so XYZ values are on that scale too.
+ *
+ * A linear light profile treats RGB components as sRGB encoded, it decodes them with the sRGB transfer
+ * function before the forward transform and encodes the result of the inverse transform.  The other
+ * profiles apply their matrix to the components as they are.
+ *
+ * The built in profiles are:
+ *   STANDARD_OBSERVER_1931  the ColorSpace.standardObserver1931Values matrix (the default)
+ *   SRGB_D65                the IEC 61966-2-1 linear sRGB primaries with a D65 white
+ *   SRGB_D50                the sRGB primaries adapted to a D50 white (Bradford)
+ *   SRGB_A                  the sRGB primaries adapted to an illuminant A white (Bradford)
+ *   SRGB                    SRGB_D65 in linear light, the correct profile for 8 bit sRGB pixels
+ *
+ * Example Usage:
+ * ColorSpace color = ColorSpace.createNewColorSpaceFromRGB(ColorSpaceProfile.SRGB_D50, 255, 128, 0);
+ */
+public final class ColorSpaceProfile {
+
+	/*
+	 * The built in matrices are precomputed so loading this class does no linear algebra and does not open the
+	 * Jama jar.  The inverses are the ones Jama computes for the forward matrices and the adapted sRGB matrices
+	 * are the IEC 61966-2-1 D65 matrix adapted with the Bradford transform to the CIE 1931 2 degree D50
+	 * (0.96422, 1.0, 0.82521) and A (1.09850, 1.0, 0.35585) white points, all printed with Double.toString so the
+	 * literals are bit for bit the values create would compute.
+	 */
+
+	// linear sRGB to XYZ (D65)
+	private static final double[][] SRGB_TO_XYZ_D65 = {{0.4124564, 0.3575761, 0.1804375},
+													   {0.2126729, 0.7151522, 0.072175},
+													   {0.0193339, 0.119192, 0.9503041}};
+
+	private static final double[][] XYZ_D65_TO_SRGB = {{3.2404548360214087, -1.5371388501025751, -0.49853154686848095},
+													   {-0.9692663898756538, 1.876010928842491, 0.041556082346673545},
+													   {0.05564341960421366, -0.20402585426769812, 1.057225162457929}};
+
+	private static final double[][] SRGB_TO_XYZ_D50 = {{0.4360746636200376, 0.38506492763998545, 0.14308041102863683},
+													   {0.22250451623139775, 0.7168786399810586, 0.06061694283598383},
+													   {0.013932183049951346, 0.09710451672056573, 0.7141733017338445}};
+
+	private static final double[][] XYZ_D50_TO_SRGB = {{3.1338567973028124, -1.616867018146872, -0.49061478803523956},
+													   {-0.9787687264883599, 1.9161415798758576, 0.03345404682160371},
+													   {0.0719452792337053, -0.22899135884909144, 1.4052426680589833}};
+
+	private static final double[][] SRGB_TO_XYZ_A = {{0.5223441527837249, 0.4958838814012397, 0.08027197691408847},
+													 {0.25680531173077825, 0.7026835778612166, 0.040511201931136796},
+													 {0.003842966916954027, 0.05462602376258567, 0.29738101291030317}};
+
+	private static final double[][] XYZ_A_TO_SRGB = {{2.9074135192693578, -2.012060577083634, -0.5107011946603064},
+													 {-1.0717377509754098, 2.180038560244394, -0.0076853404496256255},
+													 {0.1592962422852269, -0.3744507925131405, 3.3707008311519013}};
+
+	// inverse of ColorSpace.standardObserver1931Values
+	private static final double[][] XYZ_TO_STANDARD_OBSERVER_1931 = {{2.069196476211029, -0.7845476532908645, -0.4100947663730275},
+																	 {-0.04507812411151582, 1.2481654228183185, -0.0035010398039192134},
+																	 {4.5533458698500834E-4, -0.012607731543619381, 1.0101363741394336}};
+
+	private static final Map<String, ColorSpaceProfile> profiles = new LinkedHashMap<String, ColorSpaceProfile>();
+
+	/**
+	 * The ColorSpace standard observer matrix, the profile used when none is given
+	 */
+	public static final ColorSpaceProfile STANDARD_OBSERVER_1931 = register(new ColorSpaceProfile("STANDARD_OBSERVER_1931", ColorSpace.standardObserver1931Values, XYZ_TO_STANDARD_OBSERVER_1931, false));
+
+	/**
+	 * Linear sRGB primaries with a D65 white
+	 */
+	public static final ColorSpaceProfile SRGB_D65 = register(new ColorSpaceProfile("SRGB_D65", SRGB_TO_XYZ_D65, XYZ_D65_TO_SRGB, false));
+
+	/**
+	 * Linear sRGB primaries adapted to a D50 white
+	 */
+	public static final ColorSpaceProfile SRGB_D50 = register(new ColorSpaceProfile("SRGB_D50", SRGB_TO_XYZ_D50, XYZ_D50_TO_SRGB, false));
+
+	/**
+	 * Linear sRGB primaries adapted to an illuminant A white
+	 */
+	public static final ColorSpaceProfile SRGB_A = register(new ColorSpaceProfile("SRGB_A", SRGB_TO_XYZ_A, XYZ_A_TO_SRGB, false));
+
+	/**
+	 * sRGB encoded components decoded to linear light, then the sRGB primaries with a D65 white
+	 */
+	public static final ColorSpaceProfile SRGB = register(new ColorSpaceProfile("SRGB", SRGB_TO_XYZ_D65, XYZ_D65_TO_SRGB, true));
+
+	// the component values used by profiles that do not decode
+	private static final double[] IDENTITY_LEVELS = new double[256];
+	static {
+		for(int i=0; i<IDENTITY_LEVELS.length; i++){
+			IDENTITY_LEVELS[i] = i;
+		}
+	}
+
+	private final String name;
+	private final boolean linearLight;
+
+	// RGB to XYZ
+	private final double m00, m01, m02, m10, m11, m12, m20, m21, m22;
+
+	// XYZ to RGB
+	private final double i00, i01, i02, i10, i11, i12, i20, i21, i22;
+
+	// XYZ of RGB (255, 255, 255)
+	private final double whiteX, whiteY, whiteZ;
+
+	// RGB to XYZ in row major order, for the batch conversions
+	private final double[] forwardCoefficients;
+
+	private ColorSpaceProfile(String name, double[][] forward, double[][] inverse, boolean linearLight){
+		this.name = name;
+		this.linearLight = linearLight;
+		m00 = forward[0][0]; m01 = forward[0][1]; m02 = forward[0][2];
+		m10 = forward[1][0]; m11 = forward[1][1]; m12 = forward[1][2];
+		m20 = forward[2][0]; m21 = forward[2][1]; m22 = forward[2][2];
+		i00 = inverse[0][0]; i01 = inverse[0][1]; i02 = inverse[0][2];
+		i10 = inverse[1][0]; i11 = inverse[1][1]; i12 = inverse[1][2];
+		i20 = inverse[2][0]; i21 = inverse[2][1]; i22 = inverse[2][2];
+		whiteX = 255.0 * (m00 + m01 + m02);
+		whiteY = 255.0 * (m10 + m11 + m12);
+		whiteZ = 255.0 * (m20 + m21 + m22);
+		forwardCoefficients = new double[]{m00, m01, m02, m10, m11, m12, m20, m21, m22};
+	}
+
+	/**
+	 * Creates a profile from an RGB to XYZ matrix, the matrix is copied
+	 * @param name A name for the profile
+	 * @param rgbToXYZ A 3x3 matrix taking RGB column vectors to XYZ
+	 * @return
+	 */
+	public static ColorSpaceProfile create(String name, double[][] rgbToXYZ){
+		return create(name, rgbToXYZ, false);
+	}
+
+	/**
+	 * Creates a profile from an RGB to XYZ matrix, the matrix is copied
+	 * @param name A name for the profile
+	 * @param rgbToXYZ A 3x3 matrix taking linear RGB column vectors to XYZ
+	 * @param linearLight true to decode sRGB encoded components before applying the matrix
+	 * @return
+	 */
+	public static ColorSpaceProfile create(String name, double[][] rgbToXYZ, boolean linearLight){
+		Matrix forward = new Matrix(rgbToXYZ).copy();
+		Matrix inverse = forward.inverse();
+		KMMetrics.allocated(KMMetrics.Allocation.MATRIX, 2);
+		return new ColorSpaceProfile(name, forward.getArray(), inverse.getArray(), linearLight);
+	}
+
+	/**
+	 * Makes a profile available through forName, replacing any profile registered under the same name
+	 * @param profile
+	 * @return The registered profile
+	 */
+	public static ColorSpaceProfile register(ColorSpaceProfile profile){
+		synchronized(profiles){
+			profiles.put(profile.getName(), profile);
+		}
+		return profile;
+	}
+
+	/**
+	 * Returns the registered profile with the given name, or null if there is none
+	 * @param name
+	 * @return
+	 */
+	public static ColorSpaceProfile forName(String name){
+		synchronized(profiles){
+			return profiles.get(name);
+		}
+	}
+
+	/**
+	 * Returns all registered profiles by name
+	 * @return
+	 */
+	public static Map<String, ColorSpaceProfile> getProfiles(){
+		synchronized(profiles){
+			return Collections.unmodifiableMap(new LinkedHashMap<String, ColorSpaceProfile>(profiles));
+		}
+	}
+
+	/**
+	 * Returns the name of the profile
+	 * @return
+	 */
+	public String getName(){
+		return name;
+	}
+
+	/**
+	 * Returns true if the profile decodes sRGB encoded components to linear light
+	 * @return
+	 */
+	public boolean isLinearLight(){
+		return linearLight;
+	}
+
+	/**
+	 * Returns the component value used for every 8 bit channel value, shared and must not be modified
+	 * @return
+	 */
+	double[] getLevels(){
+		return linearLight ? SRGBTransfer.getLinearLevels() : IDENTITY_LEVELS;
+	}
+
+	/**
+	 * Returns the RGB to XYZ matrix in row major order, shared and must not be modified
+	 * @return
+	 */
+	double[] getForwardCoefficients(){
+		return forwardCoefficients;
+	}
+
+	/**
+	 * Returns a copy of the RGB to XYZ matrix
+	 * @return
+	 */
+	public double[][] getForwardMatrix(){
+		return new double[][]{{m00, m01, m02}, {m10, m11, m12}, {m20, m21, m22}};
+	}
+
+	/**
+	 * Returns a copy of the XYZ to RGB matrix
+	 * @return
+	 */
+	public double[][] getInverseMatrix(){
+		return new double[][]{{i00, i01, i02}, {i10, i11, i12}, {i20, i21, i22}};
+	}
+
+	/**
+	 * Returns the tristimulus X of the profile white, the XYZ of RGB (255, 255, 255)
+	 * @return
+	 */
+	public double getWhiteX(){
+		return whiteX;
+	}
+
+	/**
+	 * Returns the tristimulus Y of the profile white
+	 * @return
+	 */
+	public double getWhiteY(){
+		return whiteY;
+	}
+
+	/**
+	 * Returns the tristimulus Z of the profile white
+	 * @return
+	 */
+	public double getWhiteZ(){
+		return whiteZ;
+	}
+
+	/**
+	 * Converts RGB to XYZ
+	 * @param R
+	 * @param G
+	 * @param B
+	 * @param XYZ Receives X, Y and Z
+	 */
+	public void toXYZ(double R, double G, double B, double[] XYZ){
+		if(linearLight){
+			R = decode(R);
+			G = decode(G);
+			B = decode(B);
+		}
+		XYZ[0] = m00 * R + m01 * G + m02 * B;
+		XYZ[1] = m10 * R + m11 * G + m12 * B;
+		XYZ[2] = m20 * R + m21 * G + m22 * B;
+	}
+
+	/**
+	 * Converts RGB straight to chromaticity x, chromaticity y and tristimulus Y
+	 * @param R
+	 * @param G
+	 * @param B
+	 * @param xyY Receives x, y and Y
+	 */
+	public void toXyY(double R, double G, double B, double[] xyY){
+		if(linearLight){
+			R = decode(R);
+			G = decode(G);
+			B = decode(B);
+		}
+		double X = m00 * R + m01 * G + m02 * B;
+		double Y = m10 * R + m11 * G + m12 * B;
+		double Z = m20 * R + m21 * G + m22 * B;
+		double sum = X + Y + Z;
+		xyY[0] = X / sum;
+		xyY[1] = Y / sum;
+		xyY[2] = Y;
+	}
+
+	/**
+	 * Converts XYZ to RGB
+	 * @param X
+	 * @param Y
+	 * @param Z
+	 * @param RGB Receives R, G and B
+	 */
+	public void toRGB(double X, double Y, double Z, double[] RGB){
+		RGB[0] = i00 * X + i01 * Y + i02 * Z;
+		RGB[1] = i10 * X + i11 * Y + i12 * Z;
+		RGB[2] = i20 * X + i21 * Y + i22 * Z;
+		if(linearLight){
+			RGB[0] = encode(RGB[0]);
+			RGB[1] = encode(RGB[1]);
+			RGB[2] = encode(RGB[2]);
+		}
+	}
+
+	@Override
+	public String toString(){
+		return name;
+	}
+
+	// decodes a 0-255 sRGB encoded component to a 0-255 linear component
+	private static double decode(double component){
+		return SRGBTransfer.toLinear(component / 255.0) * 255.0;
+	}
+
+	// encodes a 0-255 linear component to a 0-255 sRGB encoded component
+	private static double encode(double component){
+		return SRGBTransfer.fromLinear(component / 255.0) * 255.0;
+	}
+
+}
@@ -0,0 +1,178 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2013 Ben Holland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package colormixer;
+
+/**
+ * A utilities class that provides batch conversions of packed RGB colors (0xRRGGBB, the alpha byte is ignored)
+ * into planes of ColorSpace components.  The conversions use the same math as the ColorSpace factories
+ * but do not create a ColorSpace (or any Jama matrices) per color and do not truncate to integers.  Every
+ * conversion can be given a ColorSpaceProfile, the standard observer profile is used when none is given.
+ *
+ * Example Usage:
+ * float[] X = new float[rgb.length], Y = new float[rgb.length], Z = new float[rgb.length];
+ * ColorSpaceUtils.convert(ColorSpaceUtils.Planes.XYZ, rgb, 0, rgb.length, X, Y, Z, 0);
+ */
+public class ColorSpaceUtils {
+
+	// number of colors the float conversions compute in double precision before narrowing them
+	private static final int BLOCK = 1024;
+
+	/**
+	 * The sets of components a batch conversion can produce, one output plane per component
+	 */
+	public static enum Planes {
+		/**
+		 * Tristimulus X, Y and Z
+		 */
+		XYZ,
+		/**
+		 * Chromaticity x, chromaticity y and tristimulus Y
+		 */
+		xyY,
+		/**
+		 * RYB red, yellow and blue
+		 */
+		RYB
+	}
+
+	/**
+	 * Converts a range of packed RGB colors into three float planes
+	 * @param planes The components to produce
+	 * @param rgb Packed RGB colors
+	 * @param offset Index of the first color to convert
+	 * @param length Number of colors to convert
+	 * @param plane0 Receives the first component
+	 * @param plane1 Receives the second component
+	 * @param plane2 Receives the third component
+	 * @param planeOffset Index in the planes that receives the first color
+	 */
+	public static void convert(Planes planes, int[] rgb, int offset, int length, float[] plane0, float[] plane1, float[] plane2, int planeOffset){
+		convert(ColorSpaceProfile.STANDARD_OBSERVER_1931, planes, rgb, offset, length, plane0, plane1, plane2, planeOffset);
+	}
+
+	/**
+	 * Converts a range of packed RGB colors into three float planes using the given profile
+	 * @param profile The RGB to XYZ profile, not used for RYB planes which are computed from the components as they are
+	 * @param planes The components to produce
+	 * @param rgb Packed RGB colors
+	 * @param offset Index of the first color to convert
+	 * @param length Number of colors to convert
+	 * @param plane0 Receives the first component
+	 * @param plane1 Receives the second component
+	 * @param plane2 Receives the third component
+	 * @param planeOffset Index in the planes that receives the first color
+	 */
+	public static void convert(ColorSpaceProfile profile, Planes planes, int[] rgb, int offset, int length, float[] plane0, float[] plane1, float[] plane2, int planeOffset){
+		convert(profile, planes, rgb, offset, length, plane0, plane1, plane2, planeOffset, new double[3][Math.min(length, BLOCK)]);
+	}
+
+	/**
+	 * Converts a range of packed RGB colors into three float planes, a block at a time through double scratch planes
+	 * @param scratch Three double arrays of the same length, the block size
+	 */
+	static void convert(ColorSpaceProfile profile, Planes planes, int[] rgb, int offset, int length, float[] plane0, float[] plane1, float[] plane2, int planeOffset,
+			double[][] scratch){
+		long start = KMMetrics.start();
+		double[] block0 = scratch[0], block1 = scratch[1], block2 = scratch[2];
+		for(int done=0; done<length; done+=block0.length){
+			int count = Math.min(block0.length, length - done);
+			convert(profile.getForwardCoefficients(), profile.getLevels(), planes, rgb, offset + done, count, block0, block1, block2, 0);
+			for(int i=0, j=planeOffset+done; i<count; i++, j++){
+				plane0[j] = (float)block0[i];
+				plane1[j] = (float)block1[i];
+				plane2[j] = (float)block2[i];
+			}
+		}
+		KMMetrics.stop(KMMetrics.Operation.COLORSPACE_BATCH, start);
+	}
+
+	/**
+	 * Converts a range of packed RGB colors into three double planes
+	 * @param planes The components to produce
+	 * @param rgb Packed RGB colors
+	 * @param offset Index of the first color to convert
+	 * @param length Number of colors to convert
+	 * @param plane0 Receives the first component
+	 * @param plane1 Receives the second component
+	 * @param plane2 Receives the third component
+	 * @param planeOffset Index in the planes that receives the first color
+	 */
+	public static void convert(Planes planes, int[] rgb, int offset, int length, double[] plane0, double[] plane1, double[] plane2, int planeOffset){
+		convert(ColorSpaceProfile.STANDARD_OBSERVER_1931, planes, rgb, offset, length, plane0, plane1, plane2, planeOffset);
+	}
+
+	/**
+	 * Converts a range of packed RGB colors into three double planes using the given profile
+	 * @param profile The RGB to XYZ profile, not used for RYB planes which are computed from the components as they are
+	 * @param planes The components to produce
+	 * @param rgb Packed RGB colors
+	 * @param offset Index of the first color to convert
+	 * @param length Number of colors to convert
+	 * @param plane0 Receives the first component
+	 * @param plane1 Receives the second component
+	 * @param plane2 Receives the third component
+	 * @param planeOffset Index in the planes that receives the first color
+	 */
+	public static void convert(ColorSpaceProfile profile, Planes planes, int[] rgb, int offset, int length, double[] plane0, double[] plane1, double[] plane2, int planeOffset){
+		long start = KMMetrics.start();
+		convert(profile.getForwardCoefficients(), profile.getLevels(), planes, rgb, offset, length, plane0, plane1, plane2, planeOffset);
+		KMMetrics.stop(KMMetrics.Operation.COLORSPACE_BATCH, start);
+	}
+
+	// the conversion behind every overload, m is the row major RGB to XYZ matrix and levels the component of every channel value
+	private static void convert(double[] m, double[] levels, Planes planes, int[] rgb, int offset, int length, double[] plane0, double[] plane1, double[] plane2, int planeOffset){
+		double m00 = m[0], m01 = m[1], m02 = m[2];
+		double m10 = m[3], m11 = m[4], m12 = m[5];
+		double m20 = m[6], m21 = m[7], m22 = m[8];
+		double[] RYB = new double[3];
+
+		for(int i=0; i<length; i++){
+			int pixel = rgb[offset + i];
+			int j = planeOffset + i;
+
+			if(planes == Planes.RYB){
+				ColorSpace.rgbToRYB((pixel >> 16) & 0xFF, (pixel >> 8) & 0xFF, pixel & 0xFF, RYB);
+				plane0[j] = RYB[0];
+				plane1[j] = RYB[1];
+				plane2[j] = RYB[2];
+				continue;
+			}
+
+			double R = levels[(pixel >> 16) & 0xFF];
+			double G = levels[(pixel >> 8) & 0xFF];
+			double B = levels[pixel & 0xFF];
+			double X = m00 * R + m01 * G + m02 * B;
+			double Y = m10 * R + m11 * G + m12 * B;
+			double Z = m20 * R + m21 * G + m22 * B;
+			if(planes == Planes.XYZ){
+				plane0[j] = X;
+				plane1[j] = Y;
+				plane2[j] = Z;
+			} else {
+				double sum = X + Y + Z;
+				plane0[j] = X / sum;
+				plane1[j] = Y / sum;
+				plane2[j] = Y;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,242 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2013 Ben Holland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package colormixer;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * One of the dominant colors of a ColorHistogram together with the pigment mix it represents.
+ *
+ * The non empty histogram bins are clustered with a weighted k-means in XYZ (using the ColorSpace
+ * standard observer math).  Each cluster is reported both as its mean color and as a KMColor whose
+ * absorbance (K/S) is the concentration weighted average of its members, i.e. the Kubelka-Munk mix
+ * of all the colors in the cluster in the proportions they appear in the image.
+ *
+ * Since only histogram bins are clustered the memory used is bounded by the histogram size and not
+ * by the size of the image.
+ *
+ * Example Usage:
+ * List<DominantColor> colors = DominantColor.extract(ColorHistogram.build(image, 6, 4), 8);
+ * java.awt.Color main = colors.get(0).getColor();
+ */
+public class DominantColor {
+
+	private static final int MAX_ITERATIONS = 50;
+
+	private final Color color;
+	private final KMColor pigment;
+	private final double weight;
+
+	private DominantColor(Color color, KMColor pigment, double weight){
+		this.color = color;
+		this.pigment = pigment;
+		this.weight = weight;
+	}
+
+	/**
+	 * Returns the mean color of the cluster
+	 * @return
+	 */
+	public Color getColor(){
+		return color;
+	}
+
+	/**
+	 * Returns the Kubelka-Munk mix of the colors in the cluster
+	 * @return
+	 */
+	public KMColor getPigment(){
+		return pigment;
+	}
+
+	/**
+	 * Returns the fraction of the histogram in this cluster (between 0 and 1)
+	 * @return
+	 */
+	public double getWeight(){
+		return weight;
+	}
+
+	/**
+	 * Extracts the dominant colors of a histogram, ordered from the largest to the smallest cluster
+	 * @param histogram The histogram to analyze
+	 * @param clusters The maximum number of dominant colors to extract
+	 * @return
+	 */
+	public static List<DominantColor> extract(ColorHistogram histogram, int clusters){
+		// gather the non empty bins
+		int bins = 0;
+		for(int bin=0; bin<histogram.getBinCount(); bin++){
+			if(histogram.getCount(bin) > 0){
+				bins++;
+			}
+		}
+		List<DominantColor> result = new ArrayList<DominantColor>();
+		if(bins == 0 || clusters < 1){
+			return result;
+		}
+		int[] rgb = new int[bins];
+		double[] weights = new double[bins];
+		for(int bin=0, i=0; bin<histogram.getBinCount(); bin++){
+			long count = histogram.getCount(bin);
+			if(count > 0){
+				rgb[i] = histogram.getColor(bin);
+				weights[i] = count;
+				i++;
+			}
+		}
+		double[] X = new double[bins], Y = new double[bins], Z = new double[bins];
+		ColorSpaceUtils.convert(ColorSpaceUtils.Planes.XYZ, rgb, 0, bins, X, Y, Z, 0);
+
+		int k = Math.min(clusters, bins);
+		double[] centerX = new double[k], centerY = new double[k], centerZ = new double[k];
+		seedCenters(X, Y, Z, weights, centerX, centerY, centerZ);
+
+		// Lloyd iterations until no bin changes cluster
+		int[] assignment = new int[bins];
+		Arrays.fill(assignment, -1);
+		double[] sumX = new double[k], sumY = new double[k], sumZ = new double[k], sumW = new double[k];
+		for(int iteration=0; iteration<MAX_ITERATIONS; iteration++){
+			boolean changed = false;
+			Arrays.fill(sumX, 0);
+			Arrays.fill(sumY, 0);
+			Arrays.fill(sumZ, 0);
+			Arrays.fill(sumW, 0);
+			for(int i=0; i<bins; i++){
+				int nearest = nearest(X[i], Y[i], Z[i], centerX, centerY, centerZ);
+				if(nearest != assignment[i]){
+					assignment[i] = nearest;
+					changed = true;
+				}
+				sumX[nearest] += X[i] * weights[i];
+				sumY[nearest] += Y[i] * weights[i];
+				sumZ[nearest] += Z[i] * weights[i];
+				sumW[nearest] += weights[i];
+			}
+			if(!changed){
+				break;
+			}
+			for(int c=0; c<k; c++){
+				if(sumW[c] > 0){
+					centerX[c] = sumX[c] / sumW[c];
+					centerY[c] = sumY[c] / sumW[c];
+					centerZ[c] = sumZ[c] / sumW[c];
+				}
+			}
+		}
+
+		// summarize each cluster as a mean color and as a concentration weighted K/S mix
+		double[] red = new double[k], green = new double[k], blue = new double[k];
+		double[] A_r = new double[k], A_g = new double[k], A_b = new double[k];
+		Arrays.fill(sumW, 0);
+		for(int i=0; i<bins; i++){
+			int c = assignment[i];
+			double w = weights[i];
+			int r = (rgb[i] >> 16) & 0xFF, g = (rgb[i] >> 8) & 0xFF, b = rgb[i] & 0xFF;
+			red[c] += r * w;
+			green[c] += g * w;
+			blue[c] += b * w;
+			A_r[c] += KMColor.absorbance(r) * w;
+			A_g[c] += KMColor.absorbance(g) * w;
+			A_b[c] += KMColor.absorbance(b) * w;
+			sumW[c] += w;
+		}
+		double total = histogram.getTotal();
+		for(int c=0; c<k; c++){
+			if(sumW[c] == 0){
+				continue;
+			}
+			Color color = new Color((int)Math.round(red[c] / sumW[c]), (int)Math.round(green[c] / sumW[c]), (int)Math.round(blue[c] / sumW[c]));
+			KMColor pigment = new KMColor(A_r[c] / sumW[c], A_g[c] / sumW[c], A_b[c] / sumW[c]);
+			result.add(new DominantColor(color, pigment, sumW[c] / total));
+		}
+		Collections.sort(result, new Comparator<DominantColor>(){
+			@Override
+			public int compare(DominantColor a, DominantColor b) {
+				return Double.compare(b.weight, a.weight);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Deterministic k-means++ style seeding, the heaviest bin first and then repeatedly the bin
+	 * with the largest weighted squared distance to its nearest center
+	 */
+	private static void seedCenters(double[] X, double[] Y, double[] Z, double[] weights, double[] centerX, double[] centerY, double[] centerZ){
+		int bins = X.length;
+		int first = 0;
+		for(int i=1; i<bins; i++){
+			if(weights[i] > weights[first]){
+				first = i;
+			}
+		}
+		centerX[0] = X[first];
+		centerY[0] = Y[first];
+		centerZ[0] = Z[first];
+
+		double[] distance = new double[bins];
+		for(int i=0; i<bins; i++){
+			distance[i] = squaredDistance(X[i], Y[i], Z[i], centerX[0], centerY[0], centerZ[0]);
+		}
+		for(int c=1; c<centerX.length; c++){
+			int farthest = 0;
+			double best = -1;
+			for(int i=0; i<bins; i++){
+				double score = distance[i] * weights[i];
+				if(score > best){
+					best = score;
+					farthest = i;
+				}
+			}
+			centerX[c] = X[farthest];
+			centerY[c] = Y[farthest];
+			centerZ[c] = Z[farthest];
+			for(int i=0; i<bins; i++){
+				distance[i] = Math.min(distance[i], squaredDistance(X[i], Y[i], Z[i], centerX[c], centerY[c], centerZ[c]));
+			}
+		}
+	}
+
+	private static int nearest(double x, double y, double z, double[] centerX, double[] centerY, double[] centerZ){
+		int nearest = 0;
+		double best = Double.MAX_VALUE;
+		for(int c=0; c<centerX.length; c++){
+			double distance = squaredDistance(x, y, z, centerX[c], centerY[c], centerZ[c]);
+			if(distance < best){
+				best = distance;
+				nearest = c;
+			}
+		}
+		return nearest;
+	}
+
+	private static double squaredDistance(double x1, double y1, double z1, double x2, double y2, double z2){
+		double dx = x1 - x2, dy = y1 - y2, dz = z1 - z2;
+		return dx * dx + dy * dy + dz * dz;
+	}
+
+}
@@ -28,10 +28,16 @@ import java.awt.Color;
  * A helper class for mixing RGB Colors.  Uses a simplified Kubelka-Munk model.
  * Assumes all colors are opaque and that all colors have equal weight when blending.
  * 
+ * By default the 8 bit RGB channel values are used as reflectances directly.  In linear light mode they
+ * are decoded with the sRGB transfer function first and the mixed reflectances are encoded again, which
+ * is the physically meaningful interpretation of sRGB colors.
+ * 
  * Example Usage: 
  * KMColor color = new KMColor(java.awt.Color.RED);
  * color.mix(java.awt.Color.ORANGE);
  * java.awt.Color result = color.getRGBColor();
+ * 
+ * KMColor linear = new KMColor(java.awt.Color.RED, true);
  */
 public class KMColor {
 	
@@ -40,12 +46,15 @@ public class KMColor {
 	private double A_g; // GREEN channel absorbance
 	private double A_b; // BLUE channel absorbance
 	
+	// true if channel values are sRGB encoded and decoded to linear light reflectances
+	private final boolean linearLight;
+	
 	/**
 	 * Returns a Reflectance measure.  Assumes the color is opaque.
 	 * @param absortionRatio Kubelka-Munk absorption coefficient to scattering coefficient ratio
 	 * @return
 	 */
-	private double calculateReflectance(double absorbtionRatio){
+	private static double calculateReflectance(double absorbtionRatio){
 		return 1.0 + absorbtionRatio - Math.sqrt(Math.pow(absorbtionRatio, 2.0) + (2.0 * absorbtionRatio));
 	}
 	
@@ -54,24 +63,156 @@ public class KMColor {
 	 * @param RGBChannelValue (integer value between 0 and 255).
 	 * @return
 	 */
-	private double calculateAbsorbance(double RGBChannelValue){
+	private static double calculateAbsorbance(double RGBChannelValue){
 		return Math.pow((1.0-RGBChannelValue), 2.0) / (2.0 * RGBChannelValue);
 	}
 	
+	/**
+	 * Returns the absorbance (K/S) of an 8 bit RGB channel value, the same value the constructor computes
+	 * @param RGBChannelValue (integer value between 0 and 255).
+	 * @return
+	 */
+	static double absorbance(int RGBChannelValue){
+		return AbsorbanceTable.VALUES[RGBChannelValue];
+	}
+	
+	/**
+	 * Returns the absorbance (K/S) of an 8 bit RGB channel value in either mode
+	 * @param RGBChannelValue (integer value between 0 and 255).
+	 * @param linearLight true to decode the value with the sRGB transfer function first
+	 * @return
+	 */
+	static double absorbance(int RGBChannelValue, boolean linearLight){
+		return linearLight ? LinearAbsorbanceTable.VALUES[RGBChannelValue] : AbsorbanceTable.VALUES[RGBChannelValue];
+	}
+	
+	/**
+	 * Absorbance of every 8 bit channel value, built on first use
+	 */
+	private static class AbsorbanceTable {
+		private static final double[] VALUES = new double[256];
+		static {
+			for(int i=0; i<VALUES.length; i++){
+				// normalize the RGB channel value
+				double value = i == 0 ? 0.00001 : (double)i/255.0;
+				VALUES[i] = calculateAbsorbance(value);
+			}
+		}
+	}
+	
+	/**
+	 * Absorbance of the linear light value of every 8 bit channel value, built on first use
+	 */
+	private static class LinearAbsorbanceTable {
+		private static final double[] VALUES = new double[256];
+		static {
+			for(int i=0; i<VALUES.length; i++){
+				double value = i == 0 ? 0.00001 : SRGBTransfer.decode(i);
+				VALUES[i] = calculateAbsorbance(value);
+			}
+		}
+	}
+	
+	/**
+	 * Returns the 8 bit RGB channel value of an absorbance (K/S), the same value getColor computes
+	 * @param absorbance Kubelka-Munk absorption coefficient to scattering coefficient ratio
+	 * @return
+	 */
+	static int reflectance(double absorbance){
+		return (int)(calculateReflectance(absorbance) * 255.0);
+	}
+	
+	/**
+	 * Returns the 8 bit RGB channel value of an absorbance (K/S) in either mode
+	 * @param absorbance Kubelka-Munk absorption coefficient to scattering coefficient ratio
+	 * @param linearLight true to encode the reflectance with the sRGB transfer function
+	 * @return
+	 */
+	static int reflectance(double absorbance, boolean linearLight){
+		return linearLight ? SRGBTransfer.encode(calculateReflectance(absorbance)) : reflectance(absorbance);
+	}
+	
 	/**
 	 * Creates a new Color
 	 * @param color The color to create
 	 */
 	public KMColor(java.awt.Color color){
-		// normalize the RGB color values
-		double red = color.getRed() == 0 ? 0.00001 : (double)color.getRed()/255.0;
-		double green = color.getGreen() == 0 ? 0.00001 : (double)color.getGreen()/255.0;
-		double blue = color.getBlue() == 0 ? 0.00001 : (double)color.getBlue()/255.0;
+		this(color, false);
+	}
+	
+	/**
+	 * Creates a new Color
+	 * @param color The color to create
+	 * @param linearLight true to treat the color as sRGB encoded and mix in linear light
+	 */
+	public KMColor(java.awt.Color color, boolean linearLight){
+		long start = KMMetrics.start();
+		KMMetrics.allocated(KMMetrics.Allocation.KMCOLOR, 1);
+		this.linearLight = linearLight;
 		
 		// calculate an Absorbance measure for each channel of the color
-		this.A_r = calculateAbsorbance(red);
-		this.A_g = calculateAbsorbance(green);
-		this.A_b = calculateAbsorbance(blue);
+		this.A_r = absorbance(color.getRed(), linearLight);
+		this.A_g = absorbance(color.getGreen(), linearLight);
+		this.A_b = absorbance(color.getBlue(), linearLight);
+		
+		KMMetrics.stop(KMMetrics.Operation.KMCOLOR_CREATE, start);
+	}
+	
+	/**
+	 * Creates a new Color directly from Kubelka-Munk absorbance (K/S) values
+	 * @param A_r RED channel absorbance
+	 * @param A_g GREEN channel absorbance
+	 * @param A_b BLUE channel absorbance
+	 */
+	public KMColor(double A_r, double A_g, double A_b){
+		this(A_r, A_g, A_b, false);
+	}
+	
+	/**
+	 * Creates a new Color directly from Kubelka-Munk absorbance (K/S) values
+	 * @param A_r RED channel absorbance
+	 * @param A_g GREEN channel absorbance
+	 * @param A_b BLUE channel absorbance
+	 * @param linearLight true if the absorbances are of linear light reflectances
+	 */
+	public KMColor(double A_r, double A_g, double A_b, boolean linearLight){
+		KMMetrics.allocated(KMMetrics.Allocation.KMCOLOR, 1);
+		this.linearLight = linearLight;
+		this.A_r = A_r;
+		this.A_g = A_g;
+		this.A_b = A_b;
+	}
+	
+	/**
+	 * Returns true if this color mixes in linear light
+	 * @return
+	 */
+	public boolean isLinearLight(){
+		return linearLight;
+	}
+	
+	/**
+	 * Returns the RED channel absorbance (K/S)
+	 * @return
+	 */
+	public double getAbsorbanceRed(){
+		return A_r;
+	}
+	
+	/**
+	 * Returns the GREEN channel absorbance (K/S)
+	 * @return
+	 */
+	public double getAbsorbanceGreen(){
+		return A_g;
+	}
+	
+	/**
+	 * Returns the BLUE channel absorbance (K/S)
+	 * @return
+	 */
+	public double getAbsorbanceBlue(){
+		return A_b;
 	}
 	
 	/**
@@ -87,6 +228,8 @@ public class KMColor {
 			return;
 		}
 		
+		long start = KMMetrics.start();
+		
 		// calculate a concentration weight for a equal concentration of all colors in mix
 		double concentration = 1.0 / (1.0 + (double)colors.length);
 		
@@ -97,7 +240,7 @@ public class KMColor {
 		
 		// sum the weighted average
 		for(int i=0; i<colors.length; i++){
-			KMColor color = new KMColor(colors[i]);
+			KMColor color = new KMColor(colors[i], linearLight);
 			A_r += color.A_r * concentration;
 			A_g += color.A_g * concentration;
 			A_b += color.A_b * concentration;
@@ -107,6 +250,8 @@ public class KMColor {
 		this.A_r = A_r;
 		this.A_g = A_g;
 		this.A_b = A_b;
+		
+		KMMetrics.stop(KMMetrics.Operation.KMCOLOR_MIX, start);
 	}
 	
 	/**
@@ -116,11 +261,15 @@ public class KMColor {
 	 * @param color The Color to mix into this Color
 	 */
 	public void mix(Color color){
+		long start = KMMetrics.start();
+		
 		// calculate new KS (Absorbance) for mix with one color of equal concentration
-		KMColor kmColor = new KMColor(color);
+		KMColor kmColor = new KMColor(color, linearLight);
 		this.A_r = (this.A_r + kmColor.A_r) / 2.0;
 		this.A_g = (this.A_g + kmColor.A_g) / 2.0;
 		this.A_b = (this.A_b + kmColor.A_b) / 2.0;
+		
+		KMMetrics.stop(KMMetrics.Operation.KMCOLOR_MIX, start);
 	}
 	
 	/**
@@ -128,9 +277,9 @@ public class KMColor {
 	 * @return
 	 */
 	public Color getColor(){
-		int red = (int)(calculateReflectance(this.A_r) * 255.0);
-		int green = (int)(calculateReflectance(this.A_g) * 255.0);
-		int blue = (int)(calculateReflectance(this.A_b) * 255.0);
+		int red = reflectance(this.A_r, linearLight);
+		int green = reflectance(this.A_g, linearLight);
+		int blue = reflectance(this.A_b, linearLight);
 		return new java.awt.Color(red, green, blue);
 	}
 	
@@ -21,6 +21,9 @@
 package colormixer;
 
 import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
  * @author Ben Holland
@@ -29,6 +32,9 @@ import java.awt.Color;
  */
 public class KMColorUtils {
 	
+	// smallest number of colors worth splitting across threads
+	private static final int PARALLEL_THRESHOLD = 65536;
+	
 	/**
 	 * Simple wrapper method for mixing two colors
 	 * @param colorA
@@ -36,25 +42,161 @@ public class KMColorUtils {
 	 * @return
 	 */
 	public static Color mix(Color colorA, Color colorB){
+		long start = KMMetrics.start();
 		KMColor color = new KMColor(colorA);
 		color.mix(colorB);
-		return color.getColor();
+		Color result = color.getColor();
+		KMMetrics.stop(KMMetrics.Operation.KMCOLORUTILS_MIX, start);
+		return result;
 	}
 	
 	/**
 	 * Simple wrapper method for mixing a collection of colors
+	 * Every color has an equal concentration in the mix, so the result does not depend on the order of the colors
 	 * @param colors
 	 * @return
 	 */
 	public static Color mix(Color... colors){
+		return mix(false, colors);
+	}
+	
+	/**
+	 * Mixes a collection of colors, optionally in linear light
+	 * Every color has an equal concentration in the mix, so the result does not depend on the order of the colors
+	 * @param linearLight true to treat the colors as sRGB encoded and mix in linear light
+	 * @param colors
+	 * @return
+	 */
+	public static Color mix(boolean linearLight, Color... colors){
 		if(colors.length >= 1){
-			KMColor color = new KMColor(colors[0]);
-			for(int i=1; i<colors.length; i++){
-				color.mix(colors[i]);
+			long start = KMMetrics.start();
+			KSAccumulator mix = new KSAccumulator(linearLight);
+			for(int i=0; i<colors.length; i++){
+				mix.add(colors[i]);
 			}
-			return color.getColor();
+			Color result = mix.getColor();
+			KMMetrics.stop(KMMetrics.Operation.KMCOLORUTILS_MIX, start);
+			return result;
 		}
 		return null;
 	}
+	
+	/**
+	 * Mixes a range of packed RGB colors (0xRRGGBB, the alpha byte is ignored) with equal concentrations
+	 * @param rgb
+	 * @param offset Index of the first color to mix
+	 * @param length Number of colors to mix
+	 * @return The mix, or null if length is 0
+	 */
+	public static Color mix(int[] rgb, int offset, int length){
+		return mix(rgb, offset, length, false);
+	}
+	
+	/**
+	 * Mixes a range of packed RGB colors with equal concentrations, optionally in linear light
+	 * @param rgb
+	 * @param offset Index of the first color to mix
+	 * @param length Number of colors to mix
+	 * @param linearLight true to treat the colors as sRGB encoded and mix in linear light
+	 * @return The mix, or null if length is 0
+	 */
+	public static Color mix(int[] rgb, int offset, int length, boolean linearLight){
+		long start = KMMetrics.start();
+		KSAccumulator mix = new KSAccumulator(linearLight);
+		mix.add(rgb, offset, length);
+		Color result = mix.getColor();
+		KMMetrics.stop(KMMetrics.Operation.KMCOLORUTILS_MIX, start);
+		return result;
+	}
+	
+	/**
+	 * Mixes a range of packed RGB colors with equal concentrations and returns the mix packed, so callers
+	 * that never create a java.awt.Color do not pay for loading AWT
+	 * @param rgb
+	 * @param offset Index of the first color to mix
+	 * @param length Number of colors to mix
+	 * @param linearLight true to treat the colors as sRGB encoded and mix in linear light
+	 * @return The mix as an opaque packed color (0xFFRRGGBB), or 0 if length is 0
+	 */
+	public static int mixRGB(int[] rgb, int offset, int length, boolean linearLight){
+		long start = KMMetrics.start();
+		KSAccumulator mix = new KSAccumulator(linearLight);
+		mix.add(rgb, offset, length);
+		int result = mix.getRGB();
+		KMMetrics.stop(KMMetrics.Operation.KMCOLORUTILS_MIX, start);
+		return result;
+	}
+	
+	/**
+	 * Mixes many groups of packed RGB colors with one call, each group on its own with equal concentrations,
+	 * for callers that collect many small mixes.  Every group returns what mixRGB returns for it
+	 * @param rgb The colors of all groups, one group after the other
+	 * @param offset Index of the first color of the first group
+	 * @param lengths Number of colors of every group
+	 * @param groups Number of groups
+	 * @param linearLight true to treat the colors as sRGB encoded and mix in linear light
+	 * @param result Receives the mix of every group as an opaque packed color (0xFFRRGGBB), 0 for an empty group
+	 * @param resultOffset Index that receives the mix of the first group
+	 */
+	public static void mixRGB(int[] rgb, int offset, int[] lengths, int groups, boolean linearLight, int[] result, int resultOffset){
+		long start = KMMetrics.start();
+		KSAccumulator mix = new KSAccumulator(linearLight);
+		for(int group=0; group<groups; group++){
+			mix.add(rgb, offset, lengths[group]);
+			offset += lengths[group];
+			result[resultOffset + group] = mix.getRGB();
+			mix.reset();
+		}
+		KMMetrics.stop(KMMetrics.Operation.KMCOLORUTILS_MIX, start);
+	}
+	
+	/**
+	 * Mixes a range of packed RGB colors with equal concentrations, summing chunks of the range in parallel
+	 * @param rgb
+	 * @param offset Index of the first color to mix
+	 * @param length Number of colors to mix
+	 * @param threads The number of worker threads, 1 mixes on the calling thread
+	 * @return The mix, or null if length is 0
+	 */
+	public static Color mix(int[] rgb, int offset, int length, int threads){
+		return mix(rgb, offset, length, threads, false);
+	}
+	
+	/**
+	 * Mixes a range of packed RGB colors with equal concentrations in parallel, optionally in linear light
+	 * @param rgb
+	 * @param offset Index of the first color to mix
+	 * @param length Number of colors to mix
+	 * @param threads The number of worker threads, 1 mixes on the calling thread
+	 * @param linearLight true to treat the colors as sRGB encoded and mix in linear light
+	 * @return The mix, or null if length is 0
+	 */
+	public static Color mix(final int[] rgb, int offset, int length, int threads, final boolean linearLight){
+		if(threads <= 1 || length < PARALLEL_THRESHOLD){
+			return mix(rgb, offset, length, linearLight);
+		}
+		long start = KMMetrics.start();
+		List<Callable<KSAccumulator>> chunks = new ArrayList<Callable<KSAccumulator>>();
+		int chunk = (length + threads - 1) / threads;
+		for(int chunkStart=offset; chunkStart<offset+length; chunkStart+=chunk){
+			final int from = chunkStart;
+			final int to = Math.min(offset + length, chunkStart + chunk);
+			chunks.add(new Callable<KSAccumulator>(){
+				@Override
+				public KSAccumulator call() throws Exception {
+					KSAccumulator partial = new KSAccumulator(linearLight);
+					partial.add(rgb, from, to - from);
+					return partial;
+				}
+			});
+		}
+		KSAccumulator mix = new KSAccumulator(linearLight);
+		for(KSAccumulator partial : Workers.invokeAll(chunks, "mix colors")){
+			mix.merge(partial);
+		}
+		Color result = mix.getColor();
+		KMMetrics.stop(KMMetrics.Operation.KMCOLORUTILS_MIX, start);
+		return result;
+	}
 
 }
@@ -0,0 +1,240 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2013 Ben Holland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package colormixer;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Optional instrumentation of the mixing and conversion hot paths.
+ *
+ * Metrics are only collected when the JVM is started with -Dcolormixer.metrics=true.
+ * Every call site guards on the static final ENABLED flag, so when metrics are disabled
+ * the JIT folds the guarded code away and the instrumented methods cost nothing extra.
+ * When enabled the metrics are published as the JMX MBean "colormixer:type=KMMetrics".
+ *
+ * Example Usage:
+ * long start = KMMetrics.start();
+ * ...
+ * KMMetrics.stop(KMMetrics.Operation.KMCOLOR_MIX, start);
+ */
+public class KMMetrics implements KMMetricsMBean {
+
+	/**
+	 * True if metrics collection was enabled at startup
+	 */
+	public static final boolean ENABLED = Boolean.getBoolean("colormixer.metrics");
+
+	/**
+	 * The name the metrics MBean is registered under
+	 */
+	public static final String OBJECT_NAME = "colormixer:type=KMMetrics";
+
+	/**
+	 * The instrumented operations
+	 */
+	public static enum Operation {
+		KMCOLOR_CREATE,
+		KMCOLOR_MIX,
+		KMCOLORUTILS_MIX,
+		COLORSPACE_FROM_RGB,
+		COLORSPACE_FROM_RYB,
+		COLORSPACE_FROM_XYZ,
+		COLORSPACE_BATCH,
+		MIXINGSERVICE_BATCH
+	}
+
+	/**
+	 * The counted allocations
+	 */
+	public static enum Allocation {
+		KMCOLOR,
+		COLORSPACE,
+		MATRIX
+	}
+
+	private static final Operation[] OPERATIONS = Operation.values();
+
+	private static final AtomicLongArray calls = new AtomicLongArray(OPERATIONS.length);
+	private static final LatencyHistogram[] latencies = new LatencyHistogram[OPERATIONS.length];
+	private static final AtomicLong[] allocations = new AtomicLong[Allocation.values().length];
+
+	static {
+		for(int i=0; i<latencies.length; i++){
+			latencies[i] = new LatencyHistogram();
+		}
+		for(int i=0; i<allocations.length; i++){
+			allocations[i] = new AtomicLong();
+		}
+		if(ENABLED){
+			try {
+				MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+				ObjectName name = new ObjectName(OBJECT_NAME);
+				if(!server.isRegistered(name)){
+					server.registerMBean(new KMMetrics(), name);
+				}
+			} catch (Exception e){
+				// metrics are still available through the static accessors
+				System.err.println("Unable to register " + OBJECT_NAME + ": " + e);
+			}
+		}
+	}
+
+	/**
+	 * Returns a start timestamp for a measured operation, or 0 if metrics are disabled
+	 * @return
+	 */
+	public static long start(){
+		return ENABLED ? System.nanoTime() : 0L;
+	}
+
+	/**
+	 * Records a call to an operation that started at the given timestamp
+	 * @param operation The operation that completed
+	 * @param start The timestamp returned by start()
+	 */
+	public static void stop(Operation operation, long start){
+		if(ENABLED){
+			long elapsed = System.nanoTime() - start;
+			calls.incrementAndGet(operation.ordinal());
+			latencies[operation.ordinal()].record(elapsed);
+		}
+	}
+
+	/**
+	 * Counts allocated objects of the given kind
+	 * @param allocation The kind of object allocated
+	 * @param count The number of objects allocated
+	 */
+	public static void allocated(Allocation allocation, int count){
+		if(ENABLED){
+			allocations[allocation.ordinal()].addAndGet(count);
+		}
+	}
+
+	/**
+	 * Returns the number of calls made to the given operation
+	 * @param operation
+	 * @return
+	 */
+	public static long getCalls(Operation operation){
+		return calls.get(operation.ordinal());
+	}
+
+	/**
+	 * Returns the latency histogram of the given operation
+	 * @param operation
+	 * @return
+	 */
+	public static LatencyHistogram getLatency(Operation operation){
+		return latencies[operation.ordinal()];
+	}
+
+	/**
+	 * Returns the number of allocated objects of the given kind
+	 * @param allocation
+	 * @return
+	 */
+	public static long getAllocations(Allocation allocation){
+		return allocations[allocation.ordinal()].get();
+	}
+
+	/**
+	 * Clears all collected metrics
+	 */
+	public static void clear(){
+		for(int i=0; i<OPERATIONS.length; i++){
+			calls.set(i, 0);
+			latencies[i].reset();
+		}
+		for(AtomicLong allocation : allocations){
+			allocation.set(0);
+		}
+	}
+
+	/**
+	 * Returns a human readable summary of all collected metrics
+	 * @return
+	 */
+	public static String report(){
+		StringBuilder result = new StringBuilder();
+		for(Operation operation : OPERATIONS){
+			LatencyHistogram latency = getLatency(operation);
+			result.append(operation.name())
+				  .append(": calls=").append(getCalls(operation))
+				  .append(", mean=").append(String.format("%.1f", latency.getMeanNanos())).append("ns")
+				  .append(", p50=").append(latency.getPercentileNanos(50.0)).append("ns")
+				  .append(", p99=").append(latency.getPercentileNanos(99.0)).append("ns")
+				  .append(", max=").append(latency.getMaxNanos()).append("ns\n");
+		}
+		for(Allocation allocation : Allocation.values()){
+			result.append(allocation.name()).append(" allocations: ").append(getAllocations(allocation)).append("\n");
+		}
+		return result.toString();
+	}
+
+	// MBean view of the static metrics
+
+	@Override
+	public long getCallCount(String operation) {
+		return getCalls(Operation.valueOf(operation));
+	}
+
+	@Override
+	public double getMeanLatencyNanos(String operation) {
+		return getLatency(Operation.valueOf(operation)).getMeanNanos();
+	}
+
+	@Override
+	public long getLatencyPercentileNanos(String operation, double percentile) {
+		return getLatency(Operation.valueOf(operation)).getPercentileNanos(percentile);
+	}
+
+	@Override
+	public long getKMColorAllocations() {
+		return getAllocations(Allocation.KMCOLOR);
+	}
+
+	@Override
+	public long getColorSpaceAllocations() {
+		return getAllocations(Allocation.COLORSPACE);
+	}
+
+	@Override
+	public long getMatrixAllocations() {
+		return getAllocations(Allocation.MATRIX);
+	}
+
+	@Override
+	public String getReport() {
+		return report();
+	}
+
+	@Override
+	public void reset() {
+		clear();
+	}
+
+}
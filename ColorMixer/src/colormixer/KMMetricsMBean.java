@@ -0,0 +1,81 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2013 Ben Holland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package colormixer;
+
+/**
+ * JMX management interface for {@link KMMetrics}.
+ * Operation names are the names of the {@link KMMetrics.Operation} constants.
+ */
+public interface KMMetricsMBean {
+
+	/**
+	 * Returns the number of calls made to the given operation
+	 * @param operation The name of a KMMetrics.Operation constant
+	 * @return
+	 */
+	public long getCallCount(String operation);
+
+	/**
+	 * Returns the mean latency of the given operation in nanoseconds
+	 * @param operation The name of a KMMetrics.Operation constant
+	 * @return
+	 */
+	public double getMeanLatencyNanos(String operation);
+
+	/**
+	 * Returns a latency percentile of the given operation in nanoseconds
+	 * @param operation The name of a KMMetrics.Operation constant
+	 * @param percentile A value between 0 and 100
+	 * @return
+	 */
+	public long getLatencyPercentileNanos(String operation, double percentile);
+
+	/**
+	 * Returns the number of KMColor objects allocated
+	 * @return
+	 */
+	public long getKMColorAllocations();
+
+	/**
+	 * Returns the number of ColorSpace objects allocated
+	 * @return
+	 */
+	public long getColorSpaceAllocations();
+
+	/**
+	 * Returns the number of Jama matrices allocated by ColorSpaceProfile.create, two per profile.  The ColorSpace
+	 * factories use the precomputed matrices of their profile and allocate none
+	 * @return
+	 */
+	public long getMatrixAllocations();
+
+	/**
+	 * Returns a human readable summary of all recorded metrics
+	 * @return
+	 */
+	public String getReport();
+
+	/**
+	 * Clears all recorded metrics
+	 */
+	public void reset();
+
+}
@@ -0,0 +1,56 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2013 Ben Holland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package colormixer;
+
+/**
+ * The Kubelka-Munk model of KMColor as a MixingModel, the absorbance of both colors is looked up per channel,
+ * averaged and turned back into a reflectance.  Mixes are the same colors KMColorUtils.mix returns.
+ */
+public class KMMixingModel extends AbstractMixingModel {
+
+	private final boolean linearLight;
+
+	/**
+	 * Creates the KM model
+	 */
+	public KMMixingModel(){
+		this(false);
+	}
+
+	/**
+	 * Creates the KM or linear light KM model
+	 * @param linearLight true to treat colors as sRGB encoded and mix in linear light
+	 */
+	public KMMixingModel(boolean linearLight){
+		super(linearLight ? MixingModels.KM_LINEAR : MixingModels.KM, "scalar");
+		this.linearLight = linearLight;
+	}
+
+	@Override
+	public int mix(int rgbA, int rgbB){
+		return 0xFF000000 | (channel(rgbA >> 16, rgbB >> 16) << 16) | (channel(rgbA >> 8, rgbB >> 8) << 8) | channel(rgbA, rgbB);
+	}
+
+	private int channel(int a, int b){
+		return KMColor.reflectance((KMColor.absorbance(a & 0xFF, linearLight) + KMColor.absorbance(b & 0xFF, linearLight)) / 2.0, linearLight);
+	}
+
+}
@@ -0,0 +1,99 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2013 Ben Holland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package colormixer;
+
+/**
+ * The Kubelka-Munk model of KMColor with every channel mix precomputed.  A channel of a two color mix only
+ * depends on that channel of both colors, so a 256x256 table of the mixed values replaces the absorbance
+ * lookups and the reflectance calculation with one table lookup per channel.  The mixes are the same as
+ * KMMixingModel's, each 64 KB table is built on first use.
+ */
+public class KMTableMixingModel extends AbstractMixingModel {
+
+	private final boolean linearLight;
+
+	/**
+	 * Creates the KM model
+	 */
+	public KMTableMixingModel(){
+		this(false);
+	}
+
+	/**
+	 * Creates the KM or linear light KM model
+	 * @param linearLight true to treat colors as sRGB encoded and mix in linear light
+	 */
+	public KMTableMixingModel(boolean linearLight){
+		super(linearLight ? MixingModels.KM_LINEAR : MixingModels.KM, "table");
+		this.linearLight = linearLight;
+	}
+
+	@Override
+	public int mix(int rgbA, int rgbB){
+		byte[] table = table();
+		return 0xFF000000 | ((table[(rgbA >> 8) & 0xFF00 | (rgbB >> 16) & 0xFF] & 0xFF) << 16)
+				| ((table[rgbA & 0xFF00 | (rgbB >> 8) & 0xFF] & 0xFF) << 8)
+				| (table[(rgbA << 8) & 0xFF00 | rgbB & 0xFF] & 0xFF);
+	}
+
+	@Override
+	public void mix(int[] a, int aOffset, int[] b, int bOffset, int[] result, int resultOffset, int length){
+		byte[] table = table();
+		for(int i=0; i<length; i++){
+			int rgbA = a[aOffset + i];
+			int rgbB = b[bOffset + i];
+			result[resultOffset + i] = 0xFF000000 | ((table[(rgbA >> 8) & 0xFF00 | (rgbB >> 16) & 0xFF] & 0xFF) << 16)
+					| ((table[rgbA & 0xFF00 | (rgbB >> 8) & 0xFF] & 0xFF) << 8)
+					| (table[(rgbA << 8) & 0xFF00 | rgbB & 0xFF] & 0xFF);
+		}
+	}
+
+	private byte[] table(){
+		return linearLight ? LinearTable.VALUES : Table.VALUES;
+	}
+
+	// VALUES[a << 8 | b] is the mix of the channel values a and b
+	private static byte[] build(boolean linearLight){
+		byte[] values = new byte[256 * 256];
+		for(int a=0; a<256; a++){
+			double absorbanceA = KMColor.absorbance(a, linearLight);
+			for(int b=0; b<256; b++){
+				values[a << 8 | b] = (byte)KMColor.reflectance((absorbanceA + KMColor.absorbance(b, linearLight)) / 2.0, linearLight);
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Channel mixes, built on first use
+	 */
+	private static class Table {
+		private static final byte[] VALUES = build(false);
+	}
+
+	/**
+	 * Linear light channel mixes, built on first use
+	 */
+	private static class LinearTable {
+		private static final byte[] VALUES = build(true);
+	}
+
+}
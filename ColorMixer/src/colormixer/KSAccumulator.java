@@ -0,0 +1,207 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2013 Ben Holland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package colormixer;
+
+import java.awt.Color;
+
+/**
+ * Accumulates an equal concentration Kubelka-Munk mix of any number of colors.
+ *
+ * The absorbance (K/S) of every added color is summed per channel with Neumaier's compensated
+ * summation, so the mix does not depend on the order the colors are added in and does not lose
+ * precision for very large color sets.  Accumulators over disjoint sets of colors can be merged,
+ * which makes it easy to reduce partial sums computed in parallel.  In linear light mode RGB colors are
+ * decoded with the sRGB transfer function before their absorbance is taken, as in KMColor.
+ *
+ * Example Usage:
+ * KSAccumulator mix = new KSAccumulator();
+ * mix.add(pixels, 0, pixels.length);
+ * java.awt.Color result = mix.getColor();
+ */
+public class KSAccumulator {
+
+	private final double[] sums = new double[3];
+	private final double[] compensations = new double[3];
+	private long count;
+	private final boolean linearLight;
+
+	/**
+	 * Creates an accumulator that uses RGB channel values as reflectances directly
+	 */
+	public KSAccumulator(){
+		this(false);
+	}
+
+	/**
+	 * Creates an accumulator
+	 * @param linearLight true to treat RGB colors as sRGB encoded and mix in linear light
+	 */
+	public KSAccumulator(boolean linearLight){
+		this.linearLight = linearLight;
+	}
+
+	/**
+	 * Returns true if this accumulator mixes in linear light
+	 * @return
+	 */
+	public boolean isLinearLight(){
+		return linearLight;
+	}
+
+	/**
+	 * Adds a color given as absorbance values
+	 * @param A_r RED channel absorbance
+	 * @param A_g GREEN channel absorbance
+	 * @param A_b BLUE channel absorbance
+	 */
+	public void add(double A_r, double A_g, double A_b){
+		sum(0, A_r);
+		sum(1, A_g);
+		sum(2, A_b);
+		count++;
+	}
+
+	/**
+	 * Adds a packed RGB color (0xRRGGBB, the alpha byte is ignored)
+	 * @param rgb
+	 */
+	public void add(int rgb){
+		add(KMColor.absorbance((rgb >> 16) & 0xFF, linearLight), KMColor.absorbance((rgb >> 8) & 0xFF, linearLight), KMColor.absorbance(rgb & 0xFF, linearLight));
+	}
+
+	/**
+	 * Adds a range of packed RGB colors
+	 * @param rgb
+	 * @param offset Index of the first color to add
+	 * @param length Number of colors to add
+	 */
+	public void add(int[] rgb, int offset, int length){
+		for(int i=offset; i<offset+length; i++){
+			add(rgb[i]);
+		}
+	}
+
+	/**
+	 * Adds a color
+	 * @param color
+	 */
+	public void add(Color color){
+		add(KMColor.absorbance(color.getRed(), linearLight), KMColor.absorbance(color.getGreen(), linearLight), KMColor.absorbance(color.getBlue(), linearLight));
+	}
+
+	/**
+	 * Adds a KMColor
+	 * @param color
+	 */
+	public void add(KMColor color){
+		add(color.getAbsorbanceRed(), color.getAbsorbanceGreen(), color.getAbsorbanceBlue());
+	}
+
+	/**
+	 * Adds all the colors of another accumulator into this one, both must use the same mode
+	 * @param other
+	 */
+	public void merge(KSAccumulator other){
+		if(other.linearLight != linearLight){
+			throw new IllegalArgumentException("Cannot merge linear light and non linear light mixes");
+		}
+		for(int channel=0; channel<3; channel++){
+			sum(channel, other.sums[channel]);
+			sum(channel, other.compensations[channel]);
+		}
+		count += other.count;
+	}
+
+	/**
+	 * Returns the number of colors added
+	 * @return
+	 */
+	public long getCount(){
+		return count;
+	}
+
+	/**
+	 * Returns the mixed absorbance of a channel (0 = RED, 1 = GREEN, 2 = BLUE)
+	 * @param channel
+	 * @return
+	 */
+	public double getAbsorbance(int channel){
+		return (sums[channel] + compensations[channel]) / (double)count;
+	}
+
+	/**
+	 * Returns the mix as a KMColor, or null if no colors were added
+	 * @return
+	 */
+	public KMColor getKMColor(){
+		if(count == 0){
+			return null;
+		}
+		return new KMColor(getAbsorbance(0), getAbsorbance(1), getAbsorbance(2), linearLight);
+	}
+
+	/**
+	 * Returns the mix as a standard RGB color, or null if no colors were added
+	 * @return
+	 */
+	public Color getColor(){
+		if(count == 0){
+			return null;
+		}
+		return new Color(KMColor.reflectance(getAbsorbance(0), linearLight), KMColor.reflectance(getAbsorbance(1), linearLight), KMColor.reflectance(getAbsorbance(2), linearLight));
+	}
+
+	/**
+	 * Returns the mix as a packed opaque RGB color (0xFFRRGGBB), the same value getColor().getRGB() returns
+	 * but without touching java.awt, or 0 if no colors were added
+	 * @return
+	 */
+	public int getRGB(){
+		if(count == 0){
+			return 0;
+		}
+		return 0xFF000000 | (KMColor.reflectance(getAbsorbance(0), linearLight) << 16) | (KMColor.reflectance(getAbsorbance(1), linearLight) << 8) | KMColor.reflectance(getAbsorbance(2), linearLight);
+	}
+
+	/**
+	 * Clears the accumulator
+	 */
+	public void reset(){
+		for(int channel=0; channel<3; channel++){
+			sums[channel] = 0;
+			compensations[channel] = 0;
+		}
+		count = 0;
+	}
+
+	// Neumaier's variant of Kahan summation, also exact when the added value is larger than the running sum
+	private void sum(int channel, double value){
+		double sum = sums[channel];
+		double total = sum + value;
+		if(Math.abs(sum) >= Math.abs(value)){
+			compensations[channel] += (sum - total) + value;
+		} else {
+			compensations[channel] += (value - total) + sum;
+		}
+		sums[channel] = total;
+	}
+
+}
@@ -0,0 +1,377 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2013 Ben Holland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package colormixer;
+
+import java.awt.Color;
+import java.io.Closeable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+
+/**
+ * Off-heap storage for the Kubelka-Munk absorbance (K/S) of a large number of pixels.
+ *
+ * Values are stored as doubles in direct (native memory) buffers, so a canvas of hundreds of megapixels
+ * does not occupy the Java heap or add to garbage collection work.  Doubles keep the absorbances exactly as
+ * KMColor holds them, so getRGB and mixRGB return the same colors as KMColor.getColor and KMColor.mix.
+ * Both truncate the reflectance, and with floats 132 of the 256 channel values would read back differently.
+ * Pixels hold colors of the default mode, KMColors that mix in linear light are rejected.  The storage is
+ * split into chunks of 2^26 pixels to stay below the 2GB limit of a single buffer.  Pixels can be stored
+ * channel interleaved (A_r, A_g, A_b of a pixel next to each other) or planar (one region per channel).
+ *
+ * The native memory is released as soon as close() is called instead of whenever the garbage collector
+ * gets around to the buffers.  A closed buffer must not be used again, and it must not be closed while
+ * other threads are still reading or writing it.  Distinct pixels may be written concurrently.
+ *
+ * Example Usage:
+ * KSBuffer canvas = new KSBuffer(width * height, KSBuffer.Layout.INTERLEAVED);
+ * canvas.setRGB(0, pixels, 0, pixels.length);
+ * canvas.mix(x + y * width, java.awt.Color.BLUE);
+ * canvas.close();
+ */
+public class KSBuffer implements Closeable {
+
+	/**
+	 * How the channels of the pixels are arranged in memory
+	 */
+	public static enum Layout {
+		/**
+		 * A_r, A_g, A_b of each pixel stored next to each other
+		 */
+		INTERLEAVED,
+		/**
+		 * All A_r values, then all A_g values, then all A_b values
+		 */
+		PLANAR
+	}
+
+	private static final int CHUNK_SHIFT = 26;
+	private static final int CHUNK_PIXELS = 1 << CHUNK_SHIFT;
+	private static final int CHUNK_MASK = CHUNK_PIXELS - 1;
+
+	private final long pixels;
+	private final Layout layout;
+
+	// interleaved buffers use only the first row, planar buffers use one row per channel
+	private ByteBuffer[][] memory;
+	private DoubleBuffer[][] chunks;
+
+	/**
+	 * Allocates a buffer with every pixel set to white
+	 * @param pixels The number of pixels to store
+	 * @param layout How to arrange the channels in memory
+	 */
+	public KSBuffer(long pixels, Layout layout){
+		if(pixels < 0){
+			throw new IllegalArgumentException("Pixel count must not be negative");
+		}
+		this.pixels = pixels;
+		this.layout = layout;
+		int chunkCount = (int)((pixels + CHUNK_PIXELS - 1) >>> CHUNK_SHIFT);
+		int rows = layout == Layout.INTERLEAVED ? 1 : 3;
+		int valuesPerPixel = layout == Layout.INTERLEAVED ? 3 : 1;
+		memory = new ByteBuffer[rows][chunkCount];
+		chunks = new DoubleBuffer[rows][chunkCount];
+		double white = KMColor.absorbance(255);
+		for(int row=0; row<rows; row++){
+			for(int chunk=0; chunk<chunkCount; chunk++){
+				long chunkPixels = Math.min(CHUNK_PIXELS, pixels - ((long)chunk << CHUNK_SHIFT));
+				memory[row][chunk] = ByteBuffer.allocateDirect((int)(chunkPixels * valuesPerPixel * 8)).order(ByteOrder.nativeOrder());
+				chunks[row][chunk] = memory[row][chunk].asDoubleBuffer();
+				DoubleBuffer values = chunks[row][chunk];
+				for(int i=0; i<values.capacity(); i++){
+					values.put(i, white);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of pixels stored
+	 * @return
+	 */
+	public long getPixels(){
+		return pixels;
+	}
+
+	/**
+	 * Returns the memory layout
+	 * @return
+	 */
+	public Layout getLayout(){
+		return layout;
+	}
+
+	/**
+	 * Returns the number of bytes of native memory held by this buffer
+	 * @return
+	 */
+	public long getSizeInBytes(){
+		return pixels * 3 * 8;
+	}
+
+	/**
+	 * Returns the absorbance of one channel of a pixel
+	 * @param pixel
+	 * @param channel 0 = RED, 1 = GREEN, 2 = BLUE
+	 * @return
+	 */
+	public double getAbsorbance(long pixel, int channel){
+		return chunk(pixel, channel).get(index(pixel, channel));
+	}
+
+	/**
+	 * Sets the absorbance of all channels of a pixel
+	 * @param pixel
+	 * @param A_r RED channel absorbance
+	 * @param A_g GREEN channel absorbance
+	 * @param A_b BLUE channel absorbance
+	 */
+	public void setAbsorbance(long pixel, double A_r, double A_g, double A_b){
+		chunk(pixel, 0).put(index(pixel, 0), A_r);
+		chunk(pixel, 1).put(index(pixel, 1), A_g);
+		chunk(pixel, 2).put(index(pixel, 2), A_b);
+	}
+
+	/**
+	 * Returns a pixel as a KMColor
+	 * @param pixel
+	 * @return
+	 */
+	public KMColor getKMColor(long pixel){
+		return new KMColor(getAbsorbance(pixel, 0), getAbsorbance(pixel, 1), getAbsorbance(pixel, 2));
+	}
+
+	/**
+	 * Replaces a pixel with a KMColor
+	 * @param pixel
+	 * @param color A color that mixes in the default mode
+	 * @throws IllegalArgumentException if the color mixes in linear light
+	 */
+	public void setKMColor(long pixel, KMColor color){
+		checkMode(color);
+		setAbsorbance(pixel, color.getAbsorbanceRed(), color.getAbsorbanceGreen(), color.getAbsorbanceBlue());
+	}
+
+	/**
+	 * Returns a pixel as a standard RGB color
+	 * @param pixel
+	 * @return
+	 */
+	public Color getColor(long pixel){
+		return new Color(getRGB(pixel));
+	}
+
+	/**
+	 * Replaces a pixel with a standard RGB color
+	 * @param pixel
+	 * @param color
+	 */
+	public void setColor(long pixel, Color color){
+		setRGB(pixel, color.getRGB());
+	}
+
+	/**
+	 * Returns a pixel as a packed RGB color (with an opaque alpha byte)
+	 * @param pixel
+	 * @return
+	 */
+	public int getRGB(long pixel){
+		int red = KMColor.reflectance(getAbsorbance(pixel, 0));
+		int green = KMColor.reflectance(getAbsorbance(pixel, 1));
+		int blue = KMColor.reflectance(getAbsorbance(pixel, 2));
+		return 0xFF000000 | (red << 16) | (green << 8) | blue;
+	}
+
+	/**
+	 * Replaces a pixel with a packed RGB color (0xRRGGBB, the alpha byte is ignored)
+	 * @param pixel
+	 * @param rgb
+	 */
+	public void setRGB(long pixel, int rgb){
+		setAbsorbance(pixel, KMColor.absorbance((rgb >> 16) & 0xFF), KMColor.absorbance((rgb >> 8) & 0xFF), KMColor.absorbance(rgb & 0xFF));
+	}
+
+	/**
+	 * Mixes a color into a pixel with equal concentrations, like KMColor.mix(Color)
+	 * @param pixel
+	 * @param color
+	 */
+	public void mix(long pixel, Color color){
+		mixRGB(pixel, color.getRGB());
+	}
+
+	/**
+	 * Mixes a KMColor into a pixel with equal concentrations
+	 * @param pixel
+	 * @param color A color that mixes in the default mode
+	 * @throws IllegalArgumentException if the color mixes in linear light
+	 */
+	public void mix(long pixel, KMColor color){
+		checkMode(color);
+		setAbsorbance(pixel, (getAbsorbance(pixel, 0) + color.getAbsorbanceRed()) / 2.0,
+							 (getAbsorbance(pixel, 1) + color.getAbsorbanceGreen()) / 2.0,
+							 (getAbsorbance(pixel, 2) + color.getAbsorbanceBlue()) / 2.0);
+	}
+
+	/**
+	 * Mixes a packed RGB color into a pixel with equal concentrations
+	 * @param pixel
+	 * @param rgb
+	 */
+	public void mixRGB(long pixel, int rgb){
+		setAbsorbance(pixel, (getAbsorbance(pixel, 0) + KMColor.absorbance((rgb >> 16) & 0xFF)) / 2.0,
+							 (getAbsorbance(pixel, 1) + KMColor.absorbance((rgb >> 8) & 0xFF)) / 2.0,
+							 (getAbsorbance(pixel, 2) + KMColor.absorbance(rgb & 0xFF)) / 2.0);
+	}
+
+	/**
+	 * Replaces a run of pixels with packed RGB colors
+	 * @param pixel The first pixel to replace
+	 * @param rgb
+	 * @param offset Index of the first color
+	 * @param length Number of pixels to replace
+	 */
+	public void setRGB(long pixel, int[] rgb, int offset, int length){
+		checkRange(pixel, length);
+		for(int i=0; i<length; i++){
+			setRGB(pixel + i, rgb[offset + i]);
+		}
+	}
+
+	/**
+	 * Reads a run of pixels as packed RGB colors
+	 * @param pixel The first pixel to read
+	 * @param rgb Receives the colors
+	 * @param offset Index that receives the first color
+	 * @param length Number of pixels to read
+	 */
+	public void getRGB(long pixel, int[] rgb, int offset, int length){
+		checkRange(pixel, length);
+		for(int i=0; i<length; i++){
+			rgb[offset + i] = getRGB(pixel + i);
+		}
+	}
+
+	/**
+	 * Mixes a run of packed RGB colors into a run of pixels, each color into one pixel with equal concentrations
+	 * @param pixel The first pixel to mix into
+	 * @param rgb
+	 * @param offset Index of the first color
+	 * @param length Number of pixels to mix into
+	 */
+	public void mixRGB(long pixel, int[] rgb, int offset, int length){
+		checkRange(pixel, length);
+		for(int i=0; i<length; i++){
+			mixRGB(pixel + i, rgb[offset + i]);
+		}
+	}
+
+	/**
+	 * Adds a run of pixels to an accumulated mix, for example to mix down a region of a canvas
+	 * @param pixel The first pixel to add
+	 * @param length Number of pixels to add
+	 * @param mix The accumulator receiving the pixels
+	 */
+	public void accumulate(long pixel, long length, KSAccumulator mix){
+		checkRange(pixel, length);
+		for(long i=pixel; i<pixel+length; i++){
+			mix.add(getAbsorbance(i, 0), getAbsorbance(i, 1), getAbsorbance(i, 2));
+		}
+	}
+
+	/**
+	 * Releases the native memory of this buffer
+	 */
+	@Override
+	public void close(){
+		ByteBuffer[][] released = memory;
+		memory = null;
+		chunks = null;
+		if(released != null){
+			for(ByteBuffer[] row : released){
+				for(ByteBuffer buffer : row){
+					free(buffer);
+				}
+			}
+		}
+	}
+
+	// the absorbances of linear light colors are of different reflectances than the ones stored here
+	private static void checkMode(KMColor color){
+		if(color.isLinearLight()){
+			throw new IllegalArgumentException("KSBuffer holds colors mixed in the default mode, not linear light");
+		}
+	}
+
+	private DoubleBuffer chunk(long pixel, int channel){
+		if(chunks == null){
+			throw new IllegalStateException("KSBuffer has been closed");
+		}
+		if(pixel < 0 || pixel >= pixels){
+			throw new IndexOutOfBoundsException("Pixel " + pixel + " is outside of the buffer");
+		}
+		return chunks[layout == Layout.INTERLEAVED ? 0 : channel][(int)(pixel >>> CHUNK_SHIFT)];
+	}
+
+	private int index(long pixel, int channel){
+		int index = (int)(pixel & CHUNK_MASK);
+		return layout == Layout.INTERLEAVED ? (index * 3) + channel : index;
+	}
+
+	private void checkRange(long pixel, long length){
+		if(pixel < 0 || length < 0 || pixel + length > pixels){
+			throw new IndexOutOfBoundsException("Pixels " + pixel + " to " + (pixel + length) + " are outside of the buffer");
+		}
+	}
+
+	/**
+	 * Frees the native memory of a direct buffer right away where the JRE allows it,
+	 * otherwise the memory is freed when the buffer is garbage collected
+	 */
+	private static void free(ByteBuffer buffer){
+		try {
+			// Java 9 and later
+			Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+			Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+			theUnsafe.setAccessible(true);
+			invokeCleaner.invoke(theUnsafe.get(null), buffer);
+			return;
+		} catch (Exception e) {
+			// fall through to the older mechanism
+		}
+		try {
+			// Java 8 and earlier
+			Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+			cleanerMethod.setAccessible(true);
+			Object cleaner = cleanerMethod.invoke(buffer);
+			if(cleaner != null){
+				cleaner.getClass().getMethod("clean").invoke(cleaner);
+			}
+		} catch (Exception e) {
+			// left to the garbage collector
+		}
+	}
+
+}
@@ -0,0 +1,338 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2013 Ben Holland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package colormixer;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+
+/**
+ * A mip-mapped pyramid of Kubelka-Munk absorbance (K/S) planes for fast zoomed out previews of large canvases.
+ *
+ * Level 0 holds the K/S of every canvas pixel and each following level halves both dimensions (rounding up)
+ * until a single texel is left.  Level 0 is stored as doubles, so it renders exactly the colors KMColor
+ * gives for the canvas, the levels above it are previews and are stored as floats to save memory.  Every texel of a level is the equal concentration KM mix, i.e. the average
+ * K/S, of the (up to) four texels below it, so a zoomed out preview looks like the paint was actually mixed
+ * instead of averaged in RGB.
+ *
+ * Changes to the base level are tracked as a dirty rectangle and only the texels above it are recomputed,
+ * which happens lazily the next time a level above the base is read.  Rendering a region of any level
+ * costs time proportional to the rendered region, not to the canvas.
+ *
+ * The pyramid is not thread safe, callers that share one must synchronize access to it.
+ *
+ * Example Usage:
+ * KSPyramid pyramid = KSPyramid.fromImage(canvas);
+ * int level = pyramid.getLevelForScale(0.1);
+ * pyramid.render(level, 0, 0, pyramid.getWidth(level), pyramid.getHeight(level), preview, 0, pyramid.getWidth(level));
+ */
+public class KSPyramid {
+
+	private final int[] widths;
+	private final int[] heights;
+	// K/S triplets of level 0
+	private final double[] base;
+	// K/S triplets of the levels above the base, levels[0] is not used
+	private final float[][] levels;
+
+	// dirty rectangle of the base level, empty when dirtyMaxX < dirtyMinX
+	private int dirtyMinX, dirtyMinY, dirtyMaxX = -1, dirtyMaxY = -1;
+
+	/**
+	 * Creates a pyramid for a white canvas
+	 * @param width The canvas width in pixels
+	 * @param height The canvas height in pixels
+	 */
+	public KSPyramid(int width, int height){
+		if(width < 1 || height < 1){
+			throw new IllegalArgumentException("Canvas must be at least 1x1");
+		}
+		if((long)width * height * 3 > Integer.MAX_VALUE){
+			throw new IllegalArgumentException("Canvas is too large for a single plane");
+		}
+		int count = 1;
+		for(int w=width, h=height; w > 1 || h > 1; w=(w + 1) / 2, h=(h + 1) / 2){
+			count++;
+		}
+		widths = new int[count];
+		heights = new int[count];
+		levels = new float[count][];
+		double white = KMColor.absorbance(255);
+		base = new double[width * height * 3];
+		Arrays.fill(base, white);
+		for(int level=0, w=width, h=height; level<count; level++, w=(w + 1) / 2, h=(h + 1) / 2){
+			widths[level] = w;
+			heights[level] = h;
+			if(level > 0){
+				levels[level] = new float[w * h * 3];
+				Arrays.fill(levels[level], (float)white);
+			}
+		}
+	}
+
+	/**
+	 * Creates a pyramid holding the given image
+	 * @param image
+	 * @return
+	 */
+	public static KSPyramid fromImage(BufferedImage image){
+		int width = image.getWidth();
+		KSPyramid pyramid = new KSPyramid(width, image.getHeight());
+		int[] row = new int[width];
+		for(int y=0; y<image.getHeight(); y++){
+			RasterConverter.readRow(image, y, row);
+			pyramid.setRGB(0, y, width, 1, row, 0, width);
+		}
+		pyramid.update();
+		return pyramid;
+	}
+
+	/**
+	 * Returns the number of levels, including the base level
+	 * @return
+	 */
+	public int getLevels(){
+		return levels.length;
+	}
+
+	/**
+	 * Returns the width of a level in texels
+	 * @param level
+	 * @return
+	 */
+	public int getWidth(int level){
+		return widths[level];
+	}
+
+	/**
+	 * Returns the height of a level in texels
+	 * @param level
+	 * @return
+	 */
+	public int getHeight(int level){
+		return heights[level];
+	}
+
+	/**
+	 * Returns the finest level that is no larger than the canvas scaled by the given factor
+	 * @param scale The zoom factor, 1 or more is the base level
+	 * @return
+	 */
+	public int getLevelForScale(double scale){
+		int level = 0;
+		while(level < levels.length - 1 && 1.0 / (1 << (level + 1)) >= scale){
+			level++;
+		}
+		return level;
+	}
+
+	/**
+	 * Replaces a region of the base level with packed RGB colors (0xRRGGBB, the alpha byte is ignored)
+	 * @param x Left edge of the region
+	 * @param y Top edge of the region
+	 * @param width Width of the region
+	 * @param height Height of the region
+	 * @param rgb The colors, row by row
+	 * @param offset Index of the first color
+	 * @param scansize Distance between the starts of two rows in rgb
+	 */
+	public void setRGB(int x, int y, int width, int height, int[] rgb, int offset, int scansize){
+		checkRegion(0, x, y, width, height);
+		for(int row=0; row<height; row++){
+			int texel = ((y + row) * widths[0] + x) * 3;
+			int index = offset + row * scansize;
+			for(int column=0; column<width; column++, texel+=3){
+				int pixel = rgb[index + column];
+				base[texel] = KMColor.absorbance((pixel >> 16) & 0xFF);
+				base[texel + 1] = KMColor.absorbance((pixel >> 8) & 0xFF);
+				base[texel + 2] = KMColor.absorbance(pixel & 0xFF);
+			}
+		}
+		markDirty(x, y, width, height);
+	}
+
+	/**
+	 * Replaces a pixel of the base level with a KMColor
+	 * @param x
+	 * @param y
+	 * @param color A color that mixes in the default mode
+	 * @throws IllegalArgumentException if the color mixes in linear light
+	 */
+	public void setKMColor(int x, int y, KMColor color){
+		checkRegion(0, x, y, 1, 1);
+		if(color.isLinearLight()){
+			throw new IllegalArgumentException("KSPyramid holds colors mixed in the default mode, not linear light");
+		}
+		int texel = (y * widths[0] + x) * 3;
+		base[texel] = color.getAbsorbanceRed();
+		base[texel + 1] = color.getAbsorbanceGreen();
+		base[texel + 2] = color.getAbsorbanceBlue();
+		markDirty(x, y, 1, 1);
+	}
+
+	/**
+	 * Returns a texel of any level as a KMColor
+	 * @param level
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	public KMColor getKMColor(int level, int x, int y){
+		checkRegion(level, x, y, 1, 1);
+		if(level > 0){
+			update();
+		}
+		int texel = (y * widths[level] + x) * 3;
+		if(level == 0){
+			return new KMColor(base[texel], base[texel + 1], base[texel + 2]);
+		}
+		float[] plane = levels[level];
+		return new KMColor(plane[texel], plane[texel + 1], plane[texel + 2]);
+	}
+
+	/**
+	 * Returns a texel of any level as a standard RGB color
+	 * @param level
+	 * @param x
+	 * @param y
+	 * @return
+	 */
+	public Color getColor(int level, int x, int y){
+		return getKMColor(level, x, y).getColor();
+	}
+
+	/**
+	 * Renders a region of a level into packed RGB colors
+	 * @param level The level to render
+	 * @param x Left edge of the region in texels of the level
+	 * @param y Top edge of the region in texels of the level
+	 * @param width Width of the region
+	 * @param height Height of the region
+	 * @param rgb Receives the colors, row by row
+	 * @param offset Index that receives the first color
+	 * @param scansize Distance between the starts of two rows in rgb
+	 */
+	public void render(int level, int x, int y, int width, int height, int[] rgb, int offset, int scansize){
+		checkRegion(level, x, y, width, height);
+		if(level == 0){
+			for(int row=0; row<height; row++){
+				int texel = ((y + row) * widths[0] + x) * 3;
+				int index = offset + row * scansize;
+				for(int column=0; column<width; column++, texel+=3){
+					rgb[index + column] = pack(base[texel], base[texel + 1], base[texel + 2]);
+				}
+			}
+			return;
+		}
+		update();
+		float[] plane = levels[level];
+		for(int row=0; row<height; row++){
+			int texel = ((y + row) * widths[level] + x) * 3;
+			int index = offset + row * scansize;
+			for(int column=0; column<width; column++, texel+=3){
+				rgb[index + column] = pack(plane[texel], plane[texel + 1], plane[texel + 2]);
+			}
+		}
+	}
+
+	private static int pack(double A_r, double A_g, double A_b){
+		return 0xFF000000 | (KMColor.reflectance(A_r) << 16) | (KMColor.reflectance(A_g) << 8) | KMColor.reflectance(A_b);
+	}
+
+	/**
+	 * Recomputes the texels of all levels above the changed part of the base level
+	 */
+	public void update(){
+		if(dirtyMaxX < dirtyMinX){
+			return;
+		}
+		int minX = dirtyMinX, minY = dirtyMinY, maxX = dirtyMaxX, maxY = dirtyMaxY;
+		for(int level=1; level<levels.length; level++){
+			minX >>= 1;
+			minY >>= 1;
+			maxX >>= 1;
+			maxY >>= 1;
+			downsample(level, minX, minY, maxX, maxY);
+		}
+		dirtyMaxX = -1;
+		dirtyMaxY = -1;
+	}
+
+	// averages the K/S of the children of each texel in the given (inclusive) region of a level
+	private void downsample(int level, int minX, int minY, int maxX, int maxY){
+		// level 1 is averaged from the doubles of the base level
+		float[] source = levels[level - 1];
+		float[] target = levels[level];
+		int sourceWidth = widths[level - 1];
+		int sourceHeight = heights[level - 1];
+		int targetWidth = widths[level];
+		for(int y=minY; y<=maxY; y++){
+			int y0 = y * 2;
+			int y1 = Math.min(y0 + 1, sourceHeight - 1);
+			for(int x=minX; x<=maxX; x++){
+				int x0 = x * 2;
+				int x1 = Math.min(x0 + 1, sourceWidth - 1);
+				// edge texels with a single child row or column count that child twice, which keeps equal weights
+				int a = (y0 * sourceWidth + x0) * 3;
+				int b = (y0 * sourceWidth + x1) * 3;
+				int c = (y1 * sourceWidth + x0) * 3;
+				int d = (y1 * sourceWidth + x1) * 3;
+				int t = (y * targetWidth + x) * 3;
+				if(source == null){
+					for(int channel=0; channel<3; channel++){
+						target[t + channel] = (float)((base[a + channel] + base[b + channel] + base[c + channel] + base[d + channel]) * 0.25);
+					}
+				} else {
+					for(int channel=0; channel<3; channel++){
+						target[t + channel] = (source[a + channel] + source[b + channel] + source[c + channel] + source[d + channel]) * 0.25f;
+					}
+				}
+			}
+		}
+	}
+
+	private void markDirty(int x, int y, int width, int height){
+		if(width <= 0 || height <= 0){
+			return;
+		}
+		if(dirtyMaxX < dirtyMinX){
+			dirtyMinX = x;
+			dirtyMinY = y;
+			dirtyMaxX = x + width - 1;
+			dirtyMaxY = y + height - 1;
+		} else {
+			dirtyMinX = Math.min(dirtyMinX, x);
+			dirtyMinY = Math.min(dirtyMinY, y);
+			dirtyMaxX = Math.max(dirtyMaxX, x + width - 1);
+			dirtyMaxY = Math.max(dirtyMaxY, y + height - 1);
+		}
+	}
+
+	private void checkRegion(int level, int x, int y, int width, int height){
+		if(level < 0 || level >= levels.length){
+			throw new IllegalArgumentException("No level " + level);
+		}
+		if(x < 0 || y < 0 || width < 0 || height < 0 || x + width > widths[level] || y + height > heights[level]){
+			throw new IllegalArgumentException("Region is outside of level " + level);
+		}
+	}
+
+}
@@ -0,0 +1,146 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2013 Ben Holland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package colormixer;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free latency histogram with log-linear buckets (in the spirit of HdrHistogram).
+ * Each power of two range of nanoseconds is split into a fixed number of linear sub buckets,
+ * which bounds the relative error of a reported percentile to 1/SUB_BUCKETS.
+ * Recording is a single atomic increment so it is safe to call from any number of threads.
+ */
+public class LatencyHistogram {
+
+	// number of linear sub buckets per power of two (must be a power of two)
+	private static final int SUB_BUCKET_BITS = 3;
+	private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+	// enough magnitudes to cover the full range of a positive long
+	private static final int MAGNITUDES = 64 - SUB_BUCKET_BITS;
+
+	private final AtomicLongArray counts = new AtomicLongArray(MAGNITUDES * SUB_BUCKETS);
+	private final AtomicLong totalCount = new AtomicLong();
+	private final AtomicLong totalNanos = new AtomicLong();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	/**
+	 * Records a single latency measurement
+	 * @param nanos The measured latency in nanoseconds (negative values are clamped to 0)
+	 */
+	public void record(long nanos){
+		if(nanos < 0){
+			nanos = 0;
+		}
+		counts.incrementAndGet(bucketIndex(nanos));
+		totalCount.incrementAndGet();
+		totalNanos.addAndGet(nanos);
+
+		// racy max update, retried until this value is no longer the largest
+		long max = maxNanos.get();
+		while(nanos > max && !maxNanos.compareAndSet(max, nanos)){
+			max = maxNanos.get();
+		}
+	}
+
+	/**
+	 * Returns the number of recorded measurements
+	 * @return
+	 */
+	public long getCount(){
+		return totalCount.get();
+	}
+
+	/**
+	 * Returns the largest recorded measurement in nanoseconds
+	 * @return
+	 */
+	public long getMaxNanos(){
+		return maxNanos.get();
+	}
+
+	/**
+	 * Returns the mean of all recorded measurements in nanoseconds
+	 * @return
+	 */
+	public double getMeanNanos(){
+		long count = totalCount.get();
+		return count == 0 ? 0.0 : (double)totalNanos.get() / (double)count;
+	}
+
+	/**
+	 * Returns the (upper bound of the bucket holding the) given percentile in nanoseconds
+	 * @param percentile A value between 0 and 100
+	 * @return
+	 */
+	public long getPercentileNanos(double percentile){
+		long count = totalCount.get();
+		if(count == 0){
+			return 0;
+		}
+		long rank = (long)Math.ceil((Math.min(100.0, Math.max(0.0, percentile)) / 100.0) * count);
+		if(rank < 1){
+			rank = 1;
+		}
+		long seen = 0;
+		for(int i=0; i<counts.length(); i++){
+			seen += counts.get(i);
+			if(seen >= rank){
+				return Math.min(bucketUpperBound(i), maxNanos.get());
+			}
+		}
+		return maxNanos.get();
+	}
+
+	/**
+	 * Clears all recorded measurements
+	 */
+	public void reset(){
+		for(int i=0; i<counts.length(); i++){
+			counts.set(i, 0);
+		}
+		totalCount.set(0);
+		totalNanos.set(0);
+		maxNanos.set(0);
+	}
+
+	private static int bucketIndex(long nanos){
+		if(nanos < SUB_BUCKETS){
+			return (int)nanos;
+		}
+		// the magnitude is the position of the highest bit above the sub bucket resolution
+		int magnitude = (63 - Long.numberOfLeadingZeros(nanos)) - SUB_BUCKET_BITS + 1;
+		int subBucket = (int)(nanos >>> (magnitude - 1)) & (SUB_BUCKETS - 1);
+		return (magnitude * SUB_BUCKETS) + subBucket;
+	}
+
+	private static long bucketUpperBound(int index){
+		int magnitude = index / SUB_BUCKETS;
+		int subBucket = index % SUB_BUCKETS;
+		if(magnitude == 0){
+			return subBucket;
+		}
+		long base = (long)(SUB_BUCKETS + subBucket) << (magnitude - 1);
+		return base + (1L << (magnitude - 1)) - 1;
+	}
+
+}
@@ -0,0 +1,83 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2013 Ben Holland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package colormixer;
+
+/**
+ * A model for mixing two packed RGB colors (0xRRGGBB, the alpha byte is ignored) with equal concentrations.
+ *
+ * Every model has a name, e.g. KM, and an implementation name, e.g. scalar or table.  Implementations of
+ * the same model return the same colors and only differ in speed, so MixingModels can pick whichever
+ * one calibrates fastest on the running JVM.  The built in models are registered by MixingModels, others
+ * are found with java.util.ServiceLoader, list them in META-INF/services/colormixer.MixingModel.  They
+ * must be thread safe.
+ *
+ * Example Usage:
+ * MixingModel model = MixingModels.get(MixingModels.KM);
+ * model.mix(a, 0, b, 0, result, 0, a.length);
+ */
+public interface MixingModel {
+
+	/**
+	 * Returns the name of the model, implementations of the same model share it
+	 * @return
+	 */
+	public String getName();
+
+	/**
+	 * Returns the name of this implementation of the model
+	 * @return
+	 */
+	public String getImplementation();
+
+	/**
+	 * Mixes two colors
+	 * @param rgbA Packed color
+	 * @param rgbB Packed color
+	 * @return The mix as an opaque packed color (0xFFRRGGBB)
+	 */
+	public int mix(int rgbA, int rgbB);
+
+	/**
+	 * Mixes two ranges of colors pairwise
+	 * @param a Packed colors
+	 * @param aOffset Index of the first color in a
+	 * @param b Packed colors
+	 * @param bOffset Index of the first color in b
+	 * @param result Receives the mixes as opaque packed colors
+	 * @param resultOffset Index that receives the first mix
+	 * @param length Number of pairs to mix
+	 */
+	public void mix(int[] a, int aOffset, int[] b, int bOffset, int[] result, int resultOffset, int length);
+
+	/**
+	 * Mixes two ranges of colors pairwise, mixing chunks of the ranges in parallel
+	 * @param a Packed colors
+	 * @param aOffset Index of the first color in a
+	 * @param b Packed colors
+	 * @param bOffset Index of the first color in b
+	 * @param result Receives the mixes as opaque packed colors
+	 * @param resultOffset Index that receives the first mix
+	 * @param length Number of pairs to mix
+	 * @param threads The number of worker threads, 1 mixes on the calling thread
+	 */
+	public void mix(int[] a, int aOffset, int[] b, int bOffset, int[] result, int resultOffset, int length, int threads);
+
+}
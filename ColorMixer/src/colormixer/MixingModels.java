@@ -0,0 +1,244 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2013 Ben Holland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package colormixer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The registry of MixingModel implementations, the built in KM, KM_LINEAR and RYB models and any others
+ * found with java.util.ServiceLoader.
+ *
+ * When a model is first requested by name, every implementation of it runs its bulk kernel over the same
+ * sample of color pairs a few times and the fastest one is returned from then on.  The choice can be
+ * pinned with the system property colormixer.mixingModel.NAME=IMPLEMENTATION, e.g.
+ * -Dcolormixer.mixingModel.KM=scalar, so a deployment can swap implementations without code changes.
+ *
+ * Example Usage:
+ * MixingModel model = MixingModels.get(MixingModels.KM_LINEAR);
+ * model.mix(a, 0, b, 0, result, 0, a.length, 8);
+ */
+public final class MixingModels {
+
+	/**
+	 * The Kubelka-Munk model of KMColor
+	 */
+	public static final String KM = "KM";
+
+	/**
+	 * The Kubelka-Munk model of KMColor in linear light
+	 */
+	public static final String KM_LINEAR = "KM_LINEAR";
+
+	/**
+	 * Averages in the RYB color model of ColorSpace
+	 */
+	public static final String RYB = "RYB";
+
+	/**
+	 * The prefix of the system properties that pin the implementation of a model
+	 */
+	public static final String PROPERTY_PREFIX = "colormixer.mixingModel.";
+
+	// calibration sample size and number of timed rounds per implementation
+	private static final int CALIBRATION_PAIRS = 16384;
+	private static final int CALIBRATION_ROUNDS = 5;
+
+	// the selected implementation of every model requested so far
+	private static final Map<String, MixingModel> selected = new ConcurrentHashMap<String, MixingModel>();
+
+	// nanoseconds per mix of every calibrated implementation, by model name and implementation name
+	private static final Map<String, Map<String, Double>> calibrations = new ConcurrentHashMap<String, Map<String, Double>>();
+
+	private MixingModels(){
+		// static helpers only
+	}
+
+	/**
+	 * Returns the fastest implementation of a model, calibrating the implementations on the first call
+	 * @param name The name of the model
+	 * @return
+	 * @throws IllegalArgumentException if no implementation of the model is available
+	 */
+	public static MixingModel get(String name){
+		MixingModel model = selected.get(name);
+		if(model == null){
+			synchronized(selected){
+				model = selected.get(name);
+				if(model == null){
+					model = select(name);
+					selected.put(name, model);
+				}
+			}
+		}
+		return model;
+	}
+
+	/**
+	 * Returns a specific implementation of a model
+	 * @param name The name of the model
+	 * @param implementation The name of the implementation
+	 * @return
+	 * @throws IllegalArgumentException if the implementation is not available
+	 */
+	public static MixingModel get(String name, String implementation){
+		for(MixingModel model : getImplementations(name)){
+			if(model.getImplementation().equals(implementation)){
+				return model;
+			}
+		}
+		throw new IllegalArgumentException("No " + implementation + " implementation of mixing model " + name);
+	}
+
+	/**
+	 * Returns the names of all available models
+	 * @return
+	 */
+	public static List<String> getNames(){
+		return new ArrayList<String>(Providers.MODELS.keySet());
+	}
+
+	/**
+	 * Returns all available implementations of a model, built in implementations first, then in ServiceLoader order
+	 * @param name The name of the model
+	 * @return
+	 */
+	public static List<MixingModel> getImplementations(String name){
+		List<MixingModel> implementations = Providers.MODELS.get(name);
+		if(implementations == null){
+			return Collections.emptyList();
+		}
+		return Collections.unmodifiableList(implementations);
+	}
+
+	/**
+	 * Returns a human readable summary of the available models, the calibration results and the selected implementations
+	 * @return
+	 */
+	public static String report(){
+		StringBuilder result = new StringBuilder();
+		for(String name : getNames()){
+			MixingModel model = selected.get(name);
+			Map<String, Double> calibration = calibrations.get(name);
+			result.append(name).append(": selected=").append(model == null ? "-" : model.getImplementation());
+			for(MixingModel implementation : getImplementations(name)){
+				result.append(", ").append(implementation.getImplementation());
+				Double nanos = calibration == null ? null : calibration.get(implementation.getImplementation());
+				if(nanos != null){
+					result.append("=").append(String.format("%.1f", nanos)).append("ns/mix");
+				}
+			}
+			result.append("\n");
+		}
+		return result.toString();
+	}
+
+	private static MixingModel select(String name){
+		List<MixingModel> implementations = getImplementations(name);
+		if(implementations.isEmpty()){
+			throw new IllegalArgumentException("Unknown mixing model " + name);
+		}
+		String pinned = System.getProperty(PROPERTY_PREFIX + name);
+		if(pinned != null){
+			return get(name, pinned);
+		}
+		if(implementations.size() == 1){
+			return implementations.get(0);
+		}
+
+		// the same pseudo random pairs for every implementation
+		Random random = new Random(name.hashCode());
+		int[] a = new int[CALIBRATION_PAIRS];
+		int[] b = new int[CALIBRATION_PAIRS];
+		int[] result = new int[CALIBRATION_PAIRS];
+		for(int i=0; i<CALIBRATION_PAIRS; i++){
+			a[i] = random.nextInt() & 0xFFFFFF;
+			b[i] = random.nextInt() & 0xFFFFFF;
+		}
+
+		Map<String, Double> calibration = new LinkedHashMap<String, Double>();
+		MixingModel fastest = null;
+		long fastestNanos = Long.MAX_VALUE;
+		for(MixingModel implementation : implementations){
+			// the first round builds tables and lets the JIT see the kernel
+			implementation.mix(a, 0, b, 0, result, 0, CALIBRATION_PAIRS);
+			long best = Long.MAX_VALUE;
+			for(int round=0; round<CALIBRATION_ROUNDS; round++){
+				long start = System.nanoTime();
+				implementation.mix(a, 0, b, 0, result, 0, CALIBRATION_PAIRS);
+				best = Math.min(best, System.nanoTime() - start);
+			}
+			calibration.put(implementation.getImplementation(), (double)best / CALIBRATION_PAIRS);
+			if(best < fastestNanos){
+				fastest = implementation;
+				fastestNanos = best;
+			}
+		}
+		calibrations.put(name, Collections.unmodifiableMap(calibration));
+		return fastest;
+	}
+
+	/**
+	 * Implementations by model name, loaded on first use.  The built in models do not depend on a
+	 * META-INF/services file, so they are available however the classes were packaged.
+	 */
+	private static class Providers {
+		private static final Map<String, List<MixingModel>> MODELS = new LinkedHashMap<String, List<MixingModel>>();
+		static {
+			register(new KMMixingModel(false));
+			register(new KMTableMixingModel(false));
+			register(new KMMixingModel(true));
+			register(new KMTableMixingModel(true));
+			register(new RYBMixingModel());
+			try {
+				for(MixingModel model : ServiceLoader.load(MixingModel.class, MixingModels.class.getClassLoader())){
+					register(model);
+				}
+			} catch (ServiceConfigurationError e){
+				// the models loaded before the broken provider are still available
+				System.err.println("Unable to load mixing models: " + e);
+			}
+		}
+
+		// adds an implementation unless one with the same model and implementation name is registered already
+		private static void register(MixingModel model){
+			List<MixingModel> implementations = MODELS.get(model.getName());
+			if(implementations == null){
+				implementations = new ArrayList<MixingModel>();
+				MODELS.put(model.getName(), implementations);
+			}
+			for(MixingModel registered : implementations){
+				if(registered.getImplementation().equals(model.getImplementation())){
+					return;
+				}
+			}
+			implementations.add(model);
+		}
+	}
+
+}
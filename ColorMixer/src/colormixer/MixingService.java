@@ -0,0 +1,612 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2013 Ben Holland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package colormixer;
+
+import java.awt.Color;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An asynchronous facade over the batch mixing and conversion kernels for callers that issue many small
+ * requests concurrently, for example request handlers.
+ *
+ * Submitting a job never blocks, it returns a Result that completes once the job has run.  A dispatcher
+ * thread collects queued jobs into micro-batches of at most maxBatchSize jobs and hands every batch to an
+ * executor, where the mixes of a batch run as a single KMColorUtils call per mode and its conversions as a
+ * single ColorSpaceUtils call per profile and planes.  While the executor is
+ * idle a batch is dispatched as soon as the queue is empty, so a lone request is not delayed.  While
+ * batches are in flight the dispatcher waits up to maxDelay for more jobs to fill the next batch.
+ *
+ * The default executor is a bounded pool of one thread per processor.  When its queue is full the
+ * dispatcher runs batches itself, which pushes back on the submitters instead of queueing without bound.
+ * Any other ExecutorService can be given instead, for example one that runs every task on a virtual thread.
+ *
+ * Example Usage:
+ * MixingService service = new MixingService();
+ * MixingService.Result<Color> result = service.mix(Color.BLUE, Color.YELLOW);
+ * Color mix = result.get();
+ * service.shutdown();
+ */
+public class MixingService {
+
+	private static final int DEFAULT_BATCH_SIZE = 256;
+	private static final long DEFAULT_DELAY_MICROSECONDS = 200;
+
+	// number of batches the default executor queues before the dispatcher runs batches itself
+	private static final int DEFAULT_QUEUED_BATCHES = 4;
+
+	private final BlockingQueue<Job<?>> queue = new LinkedBlockingQueue<Job<?>>();
+	private final int maxBatchSize;
+	private final long maxDelayNanos;
+	private final ExecutorService executor;
+	private final boolean ownsExecutor;
+	private final Thread dispatcher;
+	private volatile boolean shutdown;
+	// set once the dispatcher takes no more jobs
+	private volatile boolean terminated;
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicLong jobs = new AtomicLong();
+	private final AtomicLong batches = new AtomicLong();
+
+	/**
+	 * Creates a service with a bounded pool of one thread per processor
+	 */
+	public MixingService(){
+		this(DEFAULT_BATCH_SIZE, DEFAULT_DELAY_MICROSECONDS, TimeUnit.MICROSECONDS, null);
+	}
+
+	/**
+	 * Creates a service
+	 * @param maxBatchSize Largest number of jobs run as one batch
+	 * @param maxDelay Longest time to wait for more jobs while other batches are running
+	 * @param unit Unit of maxDelay
+	 * @param executor Runs the batches, or null for a bounded pool of one thread per processor that is
+	 * shut down with the service.  A given executor is not shut down by the service.
+	 */
+	public MixingService(int maxBatchSize, long maxDelay, TimeUnit unit, ExecutorService executor){
+		if(maxBatchSize < 1){
+			throw new IllegalArgumentException("Batches must hold at least one job");
+		}
+		this.maxBatchSize = maxBatchSize;
+		this.maxDelayNanos = unit.toNanos(maxDelay);
+		if(executor == null){
+			int threads = Runtime.getRuntime().availableProcessors();
+			this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+					new ArrayBlockingQueue<Runnable>(threads * DEFAULT_QUEUED_BATCHES), new ThreadPoolExecutor.CallerRunsPolicy());
+			this.ownsExecutor = true;
+		} else {
+			this.executor = executor;
+			this.ownsExecutor = false;
+		}
+		dispatcher = new Thread(new Runnable(){
+			@Override
+			public void run(){
+				dispatch();
+			}
+		}, "MixingService dispatcher");
+		dispatcher.setDaemon(true);
+		dispatcher.start();
+	}
+
+	/**
+	 * Mixes colors with equal concentrations
+	 * @param colors
+	 * @return The pending mix
+	 */
+	public Result<Color> mix(Color... colors){
+		int[] rgb = new int[colors.length];
+		for(int i=0; i<colors.length; i++){
+			rgb[i] = colors[i].getRGB();
+		}
+		return submit(new MixJob(rgb, false));
+	}
+
+	/**
+	 * Mixes a range of packed RGB colors (0xRRGGBB, the alpha byte is ignored) with equal concentrations,
+	 * the range is copied so the array may be reused right away
+	 * @param rgb
+	 * @param offset Index of the first color to mix
+	 * @param length Number of colors to mix
+	 * @param linearLight true to treat the colors as sRGB encoded and mix in linear light
+	 * @return The pending mix, which completes with null if length is 0
+	 */
+	public Result<Color> mix(int[] rgb, int offset, int length, boolean linearLight){
+		int[] copy = new int[length];
+		System.arraycopy(rgb, offset, copy, 0, length);
+		return submit(new MixJob(copy, linearLight));
+	}
+
+	/**
+	 * Converts a range of packed RGB colors, the range is copied so the array may be reused right away
+	 * @param profile The RGB to XYZ profile, not used for RYB planes
+	 * @param planes The components to produce
+	 * @param rgb
+	 * @param offset Index of the first color to convert
+	 * @param length Number of colors to convert
+	 * @return The pending conversion, three planes of length values
+	 */
+	public Result<double[][]> convert(ColorSpaceProfile profile, ColorSpaceUtils.Planes planes, int[] rgb, int offset, int length){
+		int[] copy = new int[length];
+		System.arraycopy(rgb, offset, copy, 0, length);
+		return submit(new ConvertJob(profile, planes, copy));
+	}
+
+	/**
+	 * Stops accepting jobs, runs the jobs already submitted and shuts down the default executor
+	 */
+	public void shutdown(){
+		shutdown = true;
+		dispatcher.interrupt();
+	}
+
+	/**
+	 * Waits until the jobs submitted before shutdown have been dispatched and, for the default executor, run
+	 * @param timeout
+	 * @param unit
+	 * @return false if the timeout elapsed first
+	 * @throws InterruptedException
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		dispatcher.join(Math.max(1, unit.toMillis(timeout)));
+		if(dispatcher.isAlive()){
+			return false;
+		}
+		if(ownsExecutor){
+			return executor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the number of jobs run so far, jobs cancelled while queued are not counted
+	 * @return
+	 */
+	public long getJobs(){
+		return jobs.get();
+	}
+
+	/**
+	 * Returns the number of batches run so far
+	 * @return
+	 */
+	public long getBatches(){
+		return batches.get();
+	}
+
+	/**
+	 * Returns the mean number of jobs per batch
+	 * @return
+	 */
+	public double getMeanBatchSize(){
+		long count = batches.get();
+		return count == 0 ? 0 : (double)jobs.get() / count;
+	}
+
+	private <T> Result<T> submit(Job<T> job){
+		if(shutdown){
+			throw new RejectedExecutionException("MixingService has been shut down");
+		}
+		queue.add(job);
+		if(terminated && queue.remove(job)){
+			// lost the race with shutdown
+			job.fail(new RejectedExecutionException("MixingService has been shut down"));
+		}
+		return job;
+	}
+
+	private void dispatch(){
+		List<Job<?>> batch = new ArrayList<Job<?>>(maxBatchSize);
+		try {
+			while(!shutdown || !queue.isEmpty()){
+				Job<?> first = shutdown ? queue.poll() : queue.take();
+				if(first == null){
+					break;
+				}
+				batch.add(first);
+				queue.drainTo(batch, maxBatchSize - batch.size());
+
+				// only wait for more jobs while the executor is busy anyway
+				long deadline = System.nanoTime() + maxDelayNanos;
+				while(batch.size() < maxBatchSize && inFlight.get() > 0 && !shutdown){
+					long remaining = deadline - System.nanoTime();
+					if(remaining <= 0){
+						break;
+					}
+					Job<?> next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+					if(next == null){
+						break;
+					}
+					batch.add(next);
+					queue.drainTo(batch, maxBatchSize - batch.size());
+				}
+
+				execute(batch);
+				batch = new ArrayList<Job<?>>(maxBatchSize);
+			}
+		} catch (InterruptedException e) {
+			// shutdown() interrupts a dispatcher waiting for jobs, run what is left
+			if(!batch.isEmpty()){
+				execute(batch);
+			}
+			batch = new ArrayList<Job<?>>();
+			queue.drainTo(batch);
+			while(!batch.isEmpty()){
+				int size = Math.min(maxBatchSize, batch.size());
+				execute(new ArrayList<Job<?>>(batch.subList(0, size)));
+				batch.subList(0, size).clear();
+			}
+		} finally {
+			terminated = true;
+			List<Job<?>> rejected = new ArrayList<Job<?>>();
+			queue.drainTo(rejected);
+			for(Job<?> job : rejected){
+				job.fail(new RejectedExecutionException("MixingService has been shut down"));
+			}
+			if(ownsExecutor){
+				executor.shutdown();
+			}
+		}
+	}
+
+	private void execute(final List<Job<?>> batch){
+		inFlight.incrementAndGet();
+		try {
+			executor.execute(new Runnable(){
+				@Override
+				public void run(){
+					try {
+						runBatch(batch);
+					} finally {
+						inFlight.decrementAndGet();
+					}
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			inFlight.decrementAndGet();
+			for(Job<?> job : batch){
+				job.fail(e);
+			}
+		}
+	}
+
+	private void runBatch(List<Job<?>> batch){
+		long start = KMMetrics.start();
+		List<MixJob> mixes = new ArrayList<MixJob>();
+		List<MixJob> linearMixes = new ArrayList<MixJob>();
+		List<ConvertJob> conversions = new ArrayList<ConvertJob>();
+		int started = 0;
+		for(Job<?> job : batch){
+			if(!job.start()){
+				// cancelled while queued
+				continue;
+			}
+			started++;
+			if(job instanceof MixJob){
+				MixJob mix = (MixJob)job;
+				(mix.linearLight ? linearMixes : mixes).add(mix);
+			} else {
+				conversions.add((ConvertJob)job);
+			}
+		}
+		mix(mixes, false);
+		mix(linearMixes, true);
+		convert(conversions);
+		jobs.addAndGet(started);
+		batches.incrementAndGet();
+		KMMetrics.stop(KMMetrics.Operation.MIXINGSERVICE_BATCH, start);
+	}
+
+	// mixes jobs of the same mode with one kernel call
+	private static void mix(List<MixJob> group, boolean linearLight){
+		if(group.size() <= 1){
+			for(MixJob job : group){
+				runJob(job);
+			}
+			return;
+		}
+		int[] results = new int[group.size()];
+		try {
+			int total = 0;
+			for(MixJob job : group){
+				total += job.rgb.length;
+			}
+			int[] rgb = new int[total];
+			int[] lengths = new int[group.size()];
+			int offset = 0;
+			for(int i=0; i<group.size(); i++){
+				int[] colors = group.get(i).rgb;
+				System.arraycopy(colors, 0, rgb, offset, colors.length);
+				lengths[i] = colors.length;
+				offset += colors.length;
+			}
+			KMColorUtils.mixRGB(rgb, 0, lengths, group.size(), linearLight, results, 0);
+		} catch (Throwable t) {
+			for(MixJob job : group){
+				job.fail(t);
+			}
+			return;
+		}
+		for(int i=0; i<group.size(); i++){
+			MixJob job = group.get(i);
+			// an empty mix completes with null like a lone one
+			job.complete(job.rgb.length == 0 ? null : new Color(results[i]));
+		}
+	}
+
+	// converts jobs that share a profile and planes with one kernel call each
+	private static void convert(List<ConvertJob> conversions){
+		while(!conversions.isEmpty()){
+			ConvertJob first = conversions.get(0);
+			List<ConvertJob> group = new ArrayList<ConvertJob>();
+			List<ConvertJob> rest = new ArrayList<ConvertJob>();
+			int total = 0;
+			for(ConvertJob job : conversions){
+				if(job.profile == first.profile && job.planes == first.planes){
+					group.add(job);
+					total += job.rgb.length;
+				} else {
+					rest.add(job);
+				}
+			}
+			if(group.size() == 1){
+				runJob(first);
+			} else {
+				convert(first.profile, first.planes, group, total);
+			}
+			conversions = rest;
+		}
+	}
+
+	// converts a group of jobs with one kernel call and splits the planes between them
+	private static void convert(ColorSpaceProfile profile, ColorSpaceUtils.Planes planes, List<ConvertJob> group, int total){
+		List<double[][]> results = new ArrayList<double[][]>(group.size());
+		try {
+			int[] rgb = new int[total];
+			int offset = 0;
+			for(ConvertJob job : group){
+				System.arraycopy(job.rgb, 0, rgb, offset, job.rgb.length);
+				offset += job.rgb.length;
+			}
+			double[] plane0 = new double[total], plane1 = new double[total], plane2 = new double[total];
+			ColorSpaceUtils.convert(profile, planes, rgb, 0, total, plane0, plane1, plane2, 0);
+			offset = 0;
+			for(ConvertJob job : group){
+				int length = job.rgb.length;
+				double[][] result = new double[3][length];
+				System.arraycopy(plane0, offset, result[0], 0, length);
+				System.arraycopy(plane1, offset, result[1], 0, length);
+				System.arraycopy(plane2, offset, result[2], 0, length);
+				offset += length;
+				results.add(result);
+			}
+		} catch (Throwable t) {
+			for(ConvertJob job : group){
+				job.fail(t);
+			}
+			return;
+		}
+		for(int i=0; i<group.size(); i++){
+			group.get(i).complete(results.get(i));
+		}
+	}
+
+	private static void runJob(Job<?> job){
+		try {
+			job.run();
+		} catch (Throwable t) {
+			job.fail(t);
+		}
+	}
+
+	/**
+	 * The pending result of a submitted job
+	 *
+	 * Listeners run once the job completes, fails or is cancelled, on the given executor.  A listener added
+	 * after that runs right away.  A job can only be cancelled while it is still queued, and its outcome is
+	 * settled exactly once.
+	 */
+	public static class Result<T> implements Future<T> {
+
+		private static final int PENDING = 0;
+		private static final int RUNNING = 1;
+		private static final int DONE = 2;
+		private static final int CANCELLED = 3;
+
+		private final AtomicInteger state = new AtomicInteger(PENDING);
+		private final CountDownLatch done = new CountDownLatch(1);
+		private volatile T value;
+		private volatile Throwable failure;
+		private List<Runnable> listeners = new ArrayList<Runnable>();
+
+		/**
+		 * Runs a listener once the result is done
+		 * @param listener
+		 * @param executor Runs the listener
+		 */
+		public void addListener(final Runnable listener, final Executor executor){
+			Runnable task = new Runnable(){
+				@Override
+				public void run(){
+					executor.execute(listener);
+				}
+			};
+			synchronized(this){
+				if(listeners != null){
+					listeners.add(task);
+					return;
+				}
+			}
+			task.run();
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning){
+			if(state.compareAndSet(PENDING, CANCELLED)){
+				finish();
+				return true;
+			}
+			return false;
+		}
+
+		@Override
+		public boolean isCancelled(){
+			return state.get() == CANCELLED;
+		}
+
+		@Override
+		public boolean isDone(){
+			return done.getCount() == 0;
+		}
+
+		@Override
+		public T get() throws InterruptedException, ExecutionException {
+			done.await();
+			return value();
+		}
+
+		@Override
+		public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+			if(!done.await(timeout, unit)){
+				throw new TimeoutException();
+			}
+			return value();
+		}
+
+		// claims the job for running, false if it was cancelled
+		boolean start(){
+			return state.compareAndSet(PENDING, RUNNING);
+		}
+
+		// completes a pending or running job, a job that is done or cancelled already keeps its outcome
+		void complete(T value){
+			if(settle()){
+				this.value = value;
+				finish();
+			}
+		}
+
+		void fail(Throwable failure){
+			if(settle()){
+				this.failure = failure;
+				finish();
+			}
+		}
+
+		// moves the job to DONE, false if another outcome got there first
+		private boolean settle(){
+			while(true){
+				int current = state.get();
+				if(current != PENDING && current != RUNNING){
+					return false;
+				}
+				if(state.compareAndSet(current, DONE)){
+					return true;
+				}
+			}
+		}
+
+		private T value() throws ExecutionException {
+			if(state.get() == CANCELLED){
+				throw new CancellationException();
+			}
+			if(failure != null){
+				throw new ExecutionException(failure);
+			}
+			return value;
+		}
+
+		private void finish(){
+			done.countDown();
+			List<Runnable> ready;
+			synchronized(this){
+				ready = listeners;
+				listeners = null;
+			}
+			for(Runnable listener : ready){
+				try {
+					listener.run();
+				} catch (RuntimeException e) {
+					// an executor that rejects a listener must not keep the other listeners or jobs from completing
+					Thread thread = Thread.currentThread();
+					thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+				}
+			}
+		}
+	}
+
+	private abstract static class Job<T> extends Result<T> {
+		abstract void run();
+	}
+
+	private static class MixJob extends Job<Color> {
+		private final int[] rgb;
+		private final boolean linearLight;
+
+		MixJob(int[] rgb, boolean linearLight){
+			this.rgb = rgb;
+			this.linearLight = linearLight;
+		}
+
+		@Override
+		void run(){
+			KSAccumulator mix = new KSAccumulator(linearLight);
+			mix.add(rgb, 0, rgb.length);
+			complete(mix.getColor());
+		}
+	}
+
+	private static class ConvertJob extends Job<double[][]> {
+		private final ColorSpaceProfile profile;
+		private final ColorSpaceUtils.Planes planes;
+		private final int[] rgb;
+
+		ConvertJob(ColorSpaceProfile profile, ColorSpaceUtils.Planes planes, int[] rgb){
+			this.profile = profile;
+			this.planes = planes;
+			this.rgb = rgb;
+		}
+
+		@Override
+		void run(){
+			double[][] result = new double[3][rgb.length];
+			ColorSpaceUtils.convert(profile, planes, rgb, 0, rgb.length, result[0], result[1], result[2], 0);
+			complete(result);
+		}
+	}
+
+}
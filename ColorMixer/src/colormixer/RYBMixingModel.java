@@ -0,0 +1,67 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2013 Ben Holland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package colormixer;
+
+/**
+ * Mixes in the RYB color model of ColorSpace, both colors are converted to RYB, their components averaged
+ * and the average converted back to RGB.  This is the painter's color wheel rather than a physical model,
+ * e.g. red and yellow mix to orange and yellow and blue mix to green.
+ */
+public class RYBMixingModel extends AbstractMixingModel {
+
+	/**
+	 * Creates the RYB model
+	 */
+	public RYBMixingModel(){
+		super(MixingModels.RYB, "scalar");
+	}
+
+	@Override
+	public int mix(int rgbA, int rgbB){
+		double[] a = new double[3];
+		double[] b = new double[3];
+		ColorSpace.rgbToRYB((rgbA >> 16) & 0xFF, (rgbA >> 8) & 0xFF, rgbA & 0xFF, a);
+		ColorSpace.rgbToRYB((rgbB >> 16) & 0xFF, (rgbB >> 8) & 0xFF, rgbB & 0xFF, b);
+		ColorSpace.rybToRGB((a[0] + b[0]) / 2.0, (a[1] + b[1]) / 2.0, (a[2] + b[2]) / 2.0, a);
+		return 0xFF000000 | (clamp(a[0]) << 16) | (clamp(a[1]) << 8) | clamp(a[2]);
+	}
+
+	@Override
+	public void mix(int[] a, int aOffset, int[] b, int bOffset, int[] result, int resultOffset, int length){
+		// reuse the component arrays across the range
+		double[] ryb = new double[3];
+		double[] rybB = new double[3];
+		for(int i=0; i<length; i++){
+			int rgbA = a[aOffset + i];
+			int rgbB = b[bOffset + i];
+			ColorSpace.rgbToRYB((rgbA >> 16) & 0xFF, (rgbA >> 8) & 0xFF, rgbA & 0xFF, ryb);
+			ColorSpace.rgbToRYB((rgbB >> 16) & 0xFF, (rgbB >> 8) & 0xFF, rgbB & 0xFF, rybB);
+			ColorSpace.rybToRGB((ryb[0] + rybB[0]) / 2.0, (ryb[1] + rybB[1]) / 2.0, (ryb[2] + rybB[2]) / 2.0, ryb);
+			result[resultOffset + i] = 0xFF000000 | (clamp(ryb[0]) << 16) | (clamp(ryb[1]) << 8) | clamp(ryb[2]);
+		}
+	}
+
+	// truncates a component to an 8 bit value like ColorSpace does
+	private static int clamp(double component){
+		return Math.max(0, Math.min(255, (int)component));
+	}
+
+}
@@ -0,0 +1,271 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2013 Ben Holland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package colormixer;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import colormixer.ColorSpaceUtils.Planes;
+
+/**
+ * Converts whole images into planes of ColorSpace components.
+ *
+ * Pixels are read straight out of the DataBufferInt or DataBufferByte backing the image raster
+ * (falling back to row wise getRGB calls for any other layout) and converted a row at a time with
+ * ColorSpaceUtils, so no objects are created per pixel.  The planes are indexed y * width + x and
+ * must hold at least width * height values.
+ *
+ * Example Usage:
+ * float[] X = new float[w * h], Y = new float[w * h], Z = new float[w * h];
+ * RasterConverter.convert(image, ColorSpaceUtils.Planes.XYZ, X, Y, Z, 4);
+ */
+public class RasterConverter {
+
+	// number of rows converted by a single task in the parallel mode
+	private static final int TILE_HEIGHT = 32;
+
+	/**
+	 * Converts an image into three float planes on the calling thread
+	 * @param image The image to convert
+	 * @param planes The components to produce
+	 * @param plane0 Receives the first component
+	 * @param plane1 Receives the second component
+	 * @param plane2 Receives the third component
+	 */
+	public static void convert(BufferedImage image, Planes planes, float[] plane0, float[] plane1, float[] plane2){
+		convert(image, new Target(ColorSpaceProfile.STANDARD_OBSERVER_1931, planes, plane0, plane1, plane2), 1);
+	}
+
+	/**
+	 * Converts an image into three float planes using the given number of threads
+	 * @param image The image to convert
+	 * @param planes The components to produce
+	 * @param plane0 Receives the first component
+	 * @param plane1 Receives the second component
+	 * @param plane2 Receives the third component
+	 * @param threads The number of worker threads, 1 converts on the calling thread
+	 */
+	public static void convert(BufferedImage image, Planes planes, float[] plane0, float[] plane1, float[] plane2, int threads){
+		convert(image, ColorSpaceProfile.STANDARD_OBSERVER_1931, planes, plane0, plane1, plane2, threads);
+	}
+
+	/**
+	 * Converts an image into three float planes with the given profile using the given number of threads
+	 * @param image The image to convert
+	 * @param profile The RGB to XYZ profile, not used for RYB planes
+	 * @param planes The components to produce
+	 * @param plane0 Receives the first component
+	 * @param plane1 Receives the second component
+	 * @param plane2 Receives the third component
+	 * @param threads The number of worker threads, 1 converts on the calling thread
+	 */
+	public static void convert(BufferedImage image, ColorSpaceProfile profile, Planes planes, float[] plane0, float[] plane1, float[] plane2, int threads){
+		convert(image, new Target(profile, planes, plane0, plane1, plane2), threads);
+	}
+
+	/**
+	 * Converts an image into three double planes on the calling thread
+	 * @param image The image to convert
+	 * @param planes The components to produce
+	 * @param plane0 Receives the first component
+	 * @param plane1 Receives the second component
+	 * @param plane2 Receives the third component
+	 */
+	public static void convert(BufferedImage image, Planes planes, double[] plane0, double[] plane1, double[] plane2){
+		convert(image, new Target(ColorSpaceProfile.STANDARD_OBSERVER_1931, planes, plane0, plane1, plane2), 1);
+	}
+
+	/**
+	 * Converts an image into three double planes using the given number of threads
+	 * @param image The image to convert
+	 * @param planes The components to produce
+	 * @param plane0 Receives the first component
+	 * @param plane1 Receives the second component
+	 * @param plane2 Receives the third component
+	 * @param threads The number of worker threads, 1 converts on the calling thread
+	 */
+	public static void convert(BufferedImage image, Planes planes, double[] plane0, double[] plane1, double[] plane2, int threads){
+		convert(image, ColorSpaceProfile.STANDARD_OBSERVER_1931, planes, plane0, plane1, plane2, threads);
+	}
+
+	/**
+	 * Converts an image into three double planes with the given profile using the given number of threads
+	 * @param image The image to convert
+	 * @param profile The RGB to XYZ profile, not used for RYB planes
+	 * @param planes The components to produce
+	 * @param plane0 Receives the first component
+	 * @param plane1 Receives the second component
+	 * @param plane2 Receives the third component
+	 * @param threads The number of worker threads, 1 converts on the calling thread
+	 */
+	public static void convert(BufferedImage image, ColorSpaceProfile profile, Planes planes, double[] plane0, double[] plane1, double[] plane2, int threads){
+		convert(image, new Target(profile, planes, plane0, plane1, plane2), threads);
+	}
+
+	/**
+	 * Reads one row of an image as packed RGB values, directly from the backing data buffer when possible
+	 * @param image The image to read
+	 * @param y The row to read
+	 * @param row Receives image.getWidth() packed RGB values
+	 */
+	public static void readRow(BufferedImage image, int y, int[] row){
+		int width = image.getWidth();
+		Raster raster = image.getRaster();
+		SampleModel sampleModel = raster.getSampleModel();
+		DataBuffer dataBuffer = raster.getDataBuffer();
+		int translateX = raster.getSampleModelTranslateX();
+		int translateY = raster.getSampleModelTranslateY();
+
+		int type = image.getType();
+		if(dataBuffer instanceof DataBufferInt && sampleModel instanceof SinglePixelPackedSampleModel
+				&& (type == BufferedImage.TYPE_INT_RGB || type == BufferedImage.TYPE_INT_ARGB || type == BufferedImage.TYPE_INT_BGR)){
+			int[] data = ((DataBufferInt)dataBuffer).getData();
+			int stride = ((SinglePixelPackedSampleModel)sampleModel).getScanlineStride();
+			int index = dataBuffer.getOffset() + (y - translateY) * stride - translateX;
+			if(type == BufferedImage.TYPE_INT_BGR){
+				for(int x=0; x<width; x++){
+					int pixel = data[index + x];
+					row[x] = ((pixel & 0xFF) << 16) | (pixel & 0xFF00) | ((pixel >> 16) & 0xFF);
+				}
+			} else {
+				System.arraycopy(data, index, row, 0, width);
+			}
+			return;
+		}
+
+		if(dataBuffer instanceof DataBufferByte && sampleModel instanceof ComponentSampleModel
+				&& sampleModel.getNumBands() >= 3 && sampleModel.getSampleSize(0) == 8
+				&& image.getColorModel().getColorSpace().isCS_sRGB() && !image.getColorModel().isAlphaPremultiplied()){
+			byte[] data = ((DataBufferByte)dataBuffer).getData();
+			ComponentSampleModel componentModel = (ComponentSampleModel)sampleModel;
+			int pixelStride = componentModel.getPixelStride();
+			int[] bankIndices = componentModel.getBankIndices();
+			int[] bandOffsets = componentModel.getBandOffsets();
+			if(bankIndices[0] == 0 && bankIndices[1] == 0 && bankIndices[2] == 0){
+				int index = dataBuffer.getOffset() + (y - translateY) * componentModel.getScanlineStride() - translateX * pixelStride;
+				int red = index + bandOffsets[0];
+				int green = index + bandOffsets[1];
+				int blue = index + bandOffsets[2];
+				for(int x=0, p=0; x<width; x++, p+=pixelStride){
+					row[x] = ((data[red + p] & 0xFF) << 16) | ((data[green + p] & 0xFF) << 8) | (data[blue + p] & 0xFF);
+				}
+				return;
+			}
+		}
+
+		// any other layout goes through the color model, but still a whole row at a time
+		image.getRGB(0, y, width, 1, row, 0, width);
+	}
+
+	private static void convert(final BufferedImage image, final Target target, int threads){
+		final int width = image.getWidth();
+		final int height = image.getHeight();
+		target.checkCapacity(width * height);
+
+		if(threads <= 1 || height <= TILE_HEIGHT){
+			convertRows(image, target, 0, height, new int[width], target.createScratch(width));
+			return;
+		}
+
+		// workers pull tiles of rows until the image is exhausted
+		final int tiles = (height + TILE_HEIGHT - 1) / TILE_HEIGHT;
+		final AtomicInteger nextTile = new AtomicInteger();
+		Workers.invokeAll(new Callable<Void>(){
+			@Override
+			public Void call() throws Exception {
+				int[] row = new int[width];
+				double[][] scratch = target.createScratch(width);
+				int tile;
+				while((tile = nextTile.getAndIncrement()) < tiles){
+					int startRow = tile * TILE_HEIGHT;
+					convertRows(image, target, startRow, Math.min(height, startRow + TILE_HEIGHT), row, scratch);
+				}
+				return null;
+			}
+		}, Math.min(threads, tiles), "convert image");
+	}
+
+	private static void convertRows(BufferedImage image, Target target, int startRow, int endRow, int[] row, double[][] scratch){
+		int width = row.length;
+		for(int y=startRow; y<endRow; y++){
+			readRow(image, y, row);
+			target.write(row, width, y * width, scratch);
+		}
+	}
+
+	/**
+	 * Destination of converted rows, either float or double planes
+	 */
+	private static class Target {
+		private final ColorSpaceProfile profile;
+		private final Planes planes;
+		private final float[] float0, float1, float2;
+		private final double[] double0, double1, double2;
+
+		Target(ColorSpaceProfile profile, Planes planes, float[] plane0, float[] plane1, float[] plane2){
+			this.profile = profile;
+			this.planes = planes;
+			float0 = plane0;
+			float1 = plane1;
+			float2 = plane2;
+			double0 = double1 = double2 = null;
+		}
+
+		Target(ColorSpaceProfile profile, Planes planes, double[] plane0, double[] plane1, double[] plane2){
+			this.profile = profile;
+			this.planes = planes;
+			float0 = float1 = float2 = null;
+			double0 = plane0;
+			double1 = plane1;
+			double2 = plane2;
+		}
+
+		void checkCapacity(int pixels){
+			int capacity = float0 != null ? Math.min(float0.length, Math.min(float1.length, float2.length))
+					: Math.min(double0.length, Math.min(double1.length, double2.length));
+			if(capacity < pixels){
+				throw new IllegalArgumentException("Planes must hold at least " + pixels + " values");
+			}
+		}
+
+		// rows are converted in double precision, float planes need a row of scratch per worker
+		double[][] createScratch(int width){
+			return float0 != null ? new double[3][width] : null;
+		}
+
+		void write(int[] row, int length, int planeOffset, double[][] scratch){
+			if(float0 != null){
+				ColorSpaceUtils.convert(profile, planes, row, 0, length, float0, float1, float2, planeOffset, scratch);
+			} else {
+				ColorSpaceUtils.convert(profile, planes, row, 0, length, double0, double1, double2, planeOffset);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,192 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2013 Ben Holland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package colormixer;
+
+/**
+ * The sRGB transfer functions (IEC 61966-2-1) for converting 8 bit sRGB channel values to and from linear light.
+ *
+ * 8 bit sRGB values are gamma encoded, so averaging them or treating them as reflectances is not physically
+ * meaningful.  Decoding goes through a 256 entry table.  Encoding finds the nearest 8 bit value from a 4096
+ * entry table of starting guesses and the exact decision thresholds between neighbouring values, so it
+ * rounds exactly like 255 * fromLinear(linear) but without a call to Math.pow.  Both tables are built on
+ * first use.
+ *
+ * Example Usage:
+ * double linear = (SRGBTransfer.decode(a) + SRGBTransfer.decode(b)) / 2.0;
+ * int value = SRGBTransfer.encode(linear);
+ */
+public final class SRGBTransfer {
+
+	// number of buckets in the encode guess table
+	private static final int ENCODE_BUCKETS = 4096;
+
+	private SRGBTransfer(){
+		// static helpers only
+	}
+
+	/**
+	 * The sRGB EOTF, converts an encoded value to linear light, negative values are mirrored
+	 * @param encoded An encoded value between 0 and 1
+	 * @return
+	 */
+	public static double toLinear(double encoded){
+		if(encoded < 0){
+			return -toLinear(-encoded);
+		}
+		if(encoded <= 0.04045){
+			return encoded / 12.92;
+		}
+		return Math.pow((encoded + 0.055) / 1.055, 2.4);
+	}
+
+	/**
+	 * The sRGB OETF, converts linear light to an encoded value, negative values are mirrored
+	 * @param linear A linear light value between 0 and 1
+	 * @return
+	 */
+	public static double fromLinear(double linear){
+		if(linear < 0){
+			return -fromLinear(-linear);
+		}
+		if(linear <= 0.0031308){
+			return linear * 12.92;
+		}
+		return 1.055 * Math.pow(linear, 1.0 / 2.4) - 0.055;
+	}
+
+	/**
+	 * Returns the linear light value of an 8 bit sRGB channel value
+	 * @param value (integer value between 0 and 255).
+	 * @return A linear light value between 0 and 1
+	 */
+	public static double decode(int value){
+		return DecodeTable.VALUES[value];
+	}
+
+	/**
+	 * Returns the nearest 8 bit sRGB channel value of a linear light value, clamped to 0 and 255
+	 * @param linear A linear light value between 0 and 1
+	 * @return
+	 */
+	public static int encode(double linear){
+		if(!(linear > 0)){
+			return 0;
+		}
+		if(linear >= 1){
+			return 255;
+		}
+		int value = EncodeTable.GUESSES[(int)(linear * (ENCODE_BUCKETS - 1))];
+		double[] thresholds = EncodeTable.THRESHOLDS;
+		while(value < 255 && linear >= thresholds[value + 1]){
+			value++;
+		}
+		// only needed when rounding put linear in the bucket above its own
+		while(linear < thresholds[value]){
+			value--;
+		}
+		return value;
+	}
+
+	/**
+	 * Decodes a range of packed sRGB colors (0xRRGGBB, the alpha byte is ignored) into linear light planes
+	 * @param rgb Packed sRGB colors
+	 * @param offset Index of the first color
+	 * @param length Number of colors
+	 * @param red Receives the linear RED channel
+	 * @param green Receives the linear GREEN channel
+	 * @param blue Receives the linear BLUE channel
+	 * @param planeOffset Index in the planes that receives the first color
+	 */
+	public static void decode(int[] rgb, int offset, int length, float[] red, float[] green, float[] blue, int planeOffset){
+		double[] values = DecodeTable.VALUES;
+		for(int i=0; i<length; i++){
+			int pixel = rgb[offset + i];
+			int j = planeOffset + i;
+			red[j] = (float)values[(pixel >> 16) & 0xFF];
+			green[j] = (float)values[(pixel >> 8) & 0xFF];
+			blue[j] = (float)values[pixel & 0xFF];
+		}
+	}
+
+	/**
+	 * Encodes linear light planes into packed sRGB colors with an opaque alpha byte
+	 * @param red The linear RED channel
+	 * @param green The linear GREEN channel
+	 * @param blue The linear BLUE channel
+	 * @param planeOffset Index in the planes of the first color
+	 * @param length Number of colors
+	 * @param rgb Receives the packed colors
+	 * @param offset Index that receives the first color
+	 */
+	public static void encode(float[] red, float[] green, float[] blue, int planeOffset, int length, int[] rgb, int offset){
+		for(int i=0; i<length; i++){
+			int j = planeOffset + i;
+			rgb[offset + i] = 0xFF000000 | (encode(red[j]) << 16) | (encode(green[j]) << 8) | encode(blue[j]);
+		}
+	}
+
+	/**
+	 * Returns 255 times the linear light value of every 8 bit channel value, shared and must not be modified
+	 * @return
+	 */
+	static double[] getLinearLevels(){
+		return DecodeTable.LEVELS;
+	}
+
+	/**
+	 * Linear light value of every 8 bit channel value, built on first use
+	 */
+	private static class DecodeTable {
+		private static final double[] VALUES = new double[256];
+		private static final double[] LEVELS = new double[256];
+		static {
+			for(int i=0; i<VALUES.length; i++){
+				VALUES[i] = toLinear((double)i / 255.0);
+				LEVELS[i] = VALUES[i] * 255.0;
+			}
+		}
+	}
+
+	/**
+	 * Decision thresholds between neighbouring 8 bit values and a starting guess for every bucket, built on first use
+	 */
+	private static class EncodeTable {
+		// THRESHOLDS[i] is the smallest linear value that encodes to i or more
+		private static final double[] THRESHOLDS = new double[256];
+		// GUESSES[j] is the value that (double)j / (ENCODE_BUCKETS - 1) encodes to
+		private static final int[] GUESSES = new int[ENCODE_BUCKETS];
+		static {
+			THRESHOLDS[0] = Double.NEGATIVE_INFINITY;
+			for(int i=1; i<THRESHOLDS.length; i++){
+				THRESHOLDS[i] = toLinear((i - 0.5) / 255.0);
+			}
+			int value = 0;
+			for(int j=0; j<GUESSES.length; j++){
+				double linear = (double)j / (ENCODE_BUCKETS - 1);
+				while(value < 255 && linear >= THRESHOLDS[value + 1]){
+					value++;
+				}
+				GUESSES[j] = value;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,117 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2013 Ben Holland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package colormixer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The worker threads shared by every parallel operation, so a parallel call does not create and shut down
+ * a thread pool of its own.  Threads are daemons, started on demand and retired after a minute without
+ * work.  The pool is not bounded, callers decide how many tasks to run at once, and a task that runs
+ * another parallel operation cannot starve it of threads.
+ *
+ * Example Usage:
+ * List<Integer> results = Workers.invokeAll(worker, threads, "count colors");
+ */
+public final class Workers {
+
+	private static final long KEEP_ALIVE_SECONDS = 60;
+
+	private Workers(){}
+
+	/**
+	 * Runs tasks on the shared workers and waits for all of them.  When a task fails or the calling
+	 * thread is interrupted the tasks that are still running are cancelled.
+	 * @param tasks The tasks to run
+	 * @param action What the tasks do, used in exception messages ("mix colors")
+	 * @return The results of the tasks in order
+	 */
+	public static <T> List<T> invokeAll(List<? extends Callable<T>> tasks, String action){
+		List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+		try {
+			for(Callable<T> task : tasks){
+				futures.add(Pool.EXECUTOR.submit(task));
+			}
+			List<T> results = new ArrayList<T>(futures.size());
+			for(Future<T> future : futures){
+				results.add(future.get());
+			}
+			return results;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("Interrupted while trying to " + action, e);
+		} catch (ExecutionException e) {
+			throw new RuntimeException("Unable to " + action, e.getCause());
+		} finally {
+			// no-op for tasks that completed
+			for(Future<T> future : futures){
+				future.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * Runs the same task on several workers at once and waits for all of them, for tasks that take
+	 * turns at a shared work queue
+	 * @param task The task to run, its call method is entered once per worker
+	 * @param workers The number of workers
+	 * @param action What the task does, used in exception messages ("mix colors")
+	 * @return The result of every worker
+	 */
+	public static <T> List<T> invokeAll(Callable<T> task, int workers, String action){
+		return invokeAll(Collections.nCopies(workers, task), action);
+	}
+
+	/**
+	 * Starts a task on a shared worker without waiting for it
+	 * @param task
+	 */
+	public static void execute(Runnable task){
+		Pool.EXECUTOR.execute(task);
+	}
+
+	// lazy holder, the pool is only created by the first parallel call
+	private static class Pool {
+		private static final ExecutorService EXECUTOR = new ThreadPoolExecutor(0, Integer.MAX_VALUE, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+				new SynchronousQueue<Runnable>(), new ThreadFactory(){
+					private final AtomicInteger count = new AtomicInteger();
+
+					@Override
+					public Thread newThread(Runnable runnable){
+						Thread thread = new Thread(runnable, "colormixer-worker-" + count.incrementAndGet());
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+	}
+
+}
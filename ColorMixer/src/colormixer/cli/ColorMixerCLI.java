@@ -0,0 +1,411 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2013 Ben Holland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package colormixer.cli;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.imageio.ImageIO;
+
+import colormixer.ColorSpaceProfile;
+import colormixer.ColorSpaceUtils;
+import colormixer.KSAccumulator;
+import colormixer.LatencyHistogram;
+import colormixer.MixingModel;
+import colormixer.MixingModels;
+import colormixer.RasterConverter;
+import colormixer.Workers;
+
+/**
+ * A headless command line tool for mixing and converting image files, everything ImageIO can read
+ * (PNG, BMP, JPEG, GIF) is accepted.
+ *
+ *   mix [options] <output> <image> <image> ...    KM mixes images of the same size pixel by pixel
+ *   average [options] <file or dir> ...           prints the KM mix of all pixels of every image
+ *   convert [options] <planes> <outdir> <file or dir> ...
+ *                                                 writes XYZ, xyY or RYB planes of every image to outdir
+ *
+ * Options:
+ *   --threads=<n>      worker threads, the number of processors by default
+ *   --linear           treat pixels as sRGB encoded and mix in linear light
+ *   --profile=<name>   ColorSpaceProfile used by convert, STANDARD_OBSERVER_1931 by default
+ *   --model=<name>     MixingModel used to mix two images, KM (or KM_LINEAR with --linear) by default
+ *
+ * Directories are streamed, images are read, processed and released by the workers one at a time so at
+ * most one image per thread is in memory.  Converted planes are written as <name>.<planes> files holding
+ * the width and height as big-endian ints followed by the three planes as big-endian floats.
+ * Throughput and per image latency are printed when done, the exit status is 1 if any image failed.
+ *
+ * Example Usage:
+ * java -Djava.awt.headless=true -cp bin:src/Jama-1.0.3.jar colormixer.cli.ColorMixerCLI convert --threads=8 XYZ out/ images/
+ */
+public class ColorMixerCLI {
+
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private boolean linearLight = false;
+	private ColorSpaceProfile profile = ColorSpaceProfile.STANDARD_OBSERVER_1931;
+	private MixingModel model = null;
+
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final AtomicLong pixels = new AtomicLong();
+	private final AtomicInteger images = new AtomicInteger();
+	private final AtomicInteger failures = new AtomicInteger();
+
+	public static void main(String[] args) {
+		System.setProperty("java.awt.headless", "true");
+		ColorMixerCLI cli = new ColorMixerCLI();
+		List<String> arguments = new ArrayList<String>();
+		for(String arg : args){
+			if(arg.startsWith("--threads=")){
+				try {
+					cli.threads = Math.max(1, Integer.parseInt(arg.substring("--threads=".length())));
+				} catch (NumberFormatException e){
+					System.err.println("Invalid thread count " + arg.substring("--threads=".length()));
+					usage();
+				}
+			} else if(arg.equals("--linear")){
+				cli.linearLight = true;
+			} else if(arg.startsWith("--profile=")){
+				String name = arg.substring("--profile=".length());
+				cli.profile = ColorSpaceProfile.forName(name);
+				if(cli.profile == null){
+					System.err.println("Unknown profile " + name + ", known profiles are " + ColorSpaceProfile.getProfiles().keySet());
+					System.exit(2);
+				}
+			} else if(arg.startsWith("--model=")){
+				String name = arg.substring("--model=".length());
+				try {
+					cli.model = MixingModels.get(name);
+				} catch (IllegalArgumentException e){
+					System.err.println("Unknown mixing model " + name + ", known models are " + MixingModels.getNames());
+					System.exit(2);
+				}
+			} else if(arg.startsWith("--")){
+				usage();
+			} else {
+				arguments.add(arg);
+			}
+		}
+		if(arguments.isEmpty()){
+			usage();
+		}
+
+		String command = arguments.remove(0);
+		long start = System.nanoTime();
+		if(command.equals("mix") && arguments.size() >= 3){
+			cli.mix(new File(arguments.get(0)), arguments.subList(1, arguments.size()));
+		} else if(command.equals("average") && arguments.size() >= 1){
+			cli.average(files(arguments));
+		} else if(command.equals("convert") && arguments.size() >= 3){
+			ColorSpaceUtils.Planes planes = null;
+			for(ColorSpaceUtils.Planes candidate : ColorSpaceUtils.Planes.values()){
+				if(candidate.name().equalsIgnoreCase(arguments.get(0))){
+					planes = candidate;
+				}
+			}
+			if(planes == null){
+				System.err.println("Unknown planes " + arguments.get(0) + ", expected one of " + Arrays.toString(ColorSpaceUtils.Planes.values()));
+				System.exit(2);
+			}
+			File output = new File(arguments.get(1));
+			if(!output.isDirectory() && !output.mkdirs()){
+				System.err.println("Unable to create " + output);
+				System.exit(1);
+			}
+			cli.convert(planes, output, files(arguments.subList(2, arguments.size())));
+		} else {
+			usage();
+		}
+		cli.printStatistics(System.nanoTime() - start);
+		System.exit(cli.failures.get() == 0 ? 0 : 1);
+	}
+
+	private static void usage(){
+		System.err.println("Usage: ColorMixerCLI mix [options] <output> <image> <image> ...");
+		System.err.println("       ColorMixerCLI average [options] <file or dir> ...");
+		System.err.println("       ColorMixerCLI convert [options] <XYZ|xyY|RYB> <outdir> <file or dir> ...");
+		System.err.println("Options: --threads=<n> --linear --profile=<name> --model=<name>");
+		System.exit(2);
+	}
+
+	/*
+	 * Commands
+	 */
+
+	private void mix(File output, List<String> inputs) {
+		long start = System.nanoTime();
+		final BufferedImage[] layers = new BufferedImage[inputs.size()];
+		for(int i=0; i<layers.length; i++){
+			layers[i] = read(new File(inputs.get(i)));
+			if(layers[i] == null){
+				return;
+			}
+			if(layers[i].getWidth() != layers[0].getWidth() || layers[i].getHeight() != layers[0].getHeight()){
+				fail(inputs.get(i), "is not the size of " + inputs.get(0));
+				return;
+			}
+		}
+		if(model == null && layers.length == 2){
+			model = MixingModels.get(linearLight ? MixingModels.KM_LINEAR : MixingModels.KM);
+		} else if(model != null && layers.length != 2){
+			fail(inputs.get(0), "--model only mixes two images");
+			return;
+		}
+		final MixingModel pairModel = model;
+		final int width = layers[0].getWidth();
+		final int height = layers[0].getHeight();
+		final BufferedImage result = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+
+		// rows are independent, so workers take turns at them
+		final AtomicInteger nextRow = new AtomicInteger();
+		run(new Callable<Void>(){
+			@Override
+			public Void call() throws Exception {
+				int[][] rows = new int[layers.length][width];
+				int[] mixed = new int[width];
+				KSAccumulator mix = new KSAccumulator(linearLight);
+				int y;
+				while((y = nextRow.getAndIncrement()) < height){
+					for(int i=0; i<layers.length; i++){
+						RasterConverter.readRow(layers[i], y, rows[i]);
+					}
+					if(pairModel != null){
+						pairModel.mix(rows[0], 0, rows[1], 0, mixed, 0, width);
+					} else {
+						for(int x=0; x<width; x++){
+							mix.reset();
+							for(int i=0; i<layers.length; i++){
+								mix.add(rows[i][x]);
+							}
+							mixed[x] = mix.getRGB();
+						}
+					}
+					result.setRGB(0, y, width, 1, mixed, 0, width);
+				}
+				return null;
+			}
+		});
+
+		try {
+			if(!ImageIO.write(result, format(output), output)){
+				fail(output.getPath(), "has no ImageIO writer");
+				return;
+			}
+		} catch (IOException e) {
+			fail(output.getPath(), e.toString());
+			return;
+		}
+		completed((long)width * height * layers.length, start);
+		System.out.println("Wrote " + output);
+	}
+
+	private void average(final List<File> files) {
+		stream(files, new ImageTask(){
+			@Override
+			public void process(File file, BufferedImage image){
+				int width = image.getWidth();
+				int[] row = new int[width];
+				KSAccumulator mix = new KSAccumulator(linearLight);
+				for(int y=0; y<image.getHeight(); y++){
+					RasterConverter.readRow(image, y, row);
+					mix.add(row, 0, width);
+				}
+				Color color = mix.getColor();
+				synchronized(System.out){
+					System.out.println(String.format("%s\t#%06X\t%d, %d, %d", file.getPath(), color.getRGB() & 0xFFFFFF, color.getRed(), color.getGreen(), color.getBlue()));
+				}
+			}
+		});
+	}
+
+	private void convert(final ColorSpaceUtils.Planes planes, final File output, List<File> files) {
+		// a lone image is split across the threads, otherwise every thread converts its own images
+		final int imageThreads = files.size() == 1 ? threads : 1;
+		stream(files, new ImageTask(){
+			@Override
+			public void process(File file, BufferedImage image) throws IOException {
+				int width = image.getWidth();
+				int height = image.getHeight();
+				float[] plane0 = new float[width * height], plane1 = new float[width * height], plane2 = new float[width * height];
+				RasterConverter.convert(image, profile, planes, plane0, plane1, plane2, imageThreads);
+
+				File target = new File(output, baseName(file) + "." + planes.name());
+				DataOutputStream stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(target), 1 << 16));
+				try {
+					stream.writeInt(width);
+					stream.writeInt(height);
+					for(float[] plane : new float[][]{plane0, plane1, plane2}){
+						for(float value : plane){
+							stream.writeFloat(value);
+						}
+					}
+				} finally {
+					stream.close();
+				}
+			}
+		});
+	}
+
+	/*
+	 * Streaming
+	 */
+
+	/**
+	 * Work done on every image of a stream
+	 */
+	private static interface ImageTask {
+		void process(File file, BufferedImage image) throws IOException;
+	}
+
+	// hands the files out to the workers one at a time
+	private void stream(final List<File> files, final ImageTask task){
+		final AtomicInteger nextFile = new AtomicInteger();
+		run(new Callable<Void>(){
+			@Override
+			public Void call() throws Exception {
+				int index;
+				while((index = nextFile.getAndIncrement()) < files.size()){
+					File file = files.get(index);
+					long start = System.nanoTime();
+					BufferedImage image = read(file);
+					if(image == null){
+						continue;
+					}
+					try {
+						task.process(file, image);
+						completed((long)image.getWidth() * image.getHeight(), start);
+					} catch (IOException e) {
+						fail(file.getPath(), e.toString());
+					} catch (RuntimeException e) {
+						fail(file.getPath(), e.toString());
+					}
+				}
+				return null;
+			}
+		});
+	}
+
+	private void run(Callable<Void> worker){
+		if(threads <= 1){
+			try {
+				worker.call();
+			} catch (Exception e) {
+				throw new RuntimeException("Unable to process images", e);
+			}
+			return;
+		}
+		Workers.invokeAll(worker, threads, "process images");
+	}
+
+	/*
+	 * Helpers
+	 */
+
+	// expands directories (not recursively) into the image files they contain, in name order
+	private static List<File> files(List<String> paths){
+		List<File> files = new ArrayList<File>();
+		for(String path : paths){
+			File file = new File(path);
+			if(file.isDirectory()){
+				File[] children = file.listFiles();
+				if(children == null){
+					continue;
+				}
+				Arrays.sort(children);
+				for(File child : children){
+					if(child.isFile() && isImage(child)){
+						files.add(child);
+					}
+				}
+			} else {
+				files.add(file);
+			}
+		}
+		return files;
+	}
+
+	private static boolean isImage(File file){
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+		return dot >= 0 && ImageIO.getImageReadersBySuffix(name.substring(dot + 1).toLowerCase(Locale.ENGLISH)).hasNext();
+	}
+
+	private static String baseName(File file){
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+		return dot > 0 ? name.substring(0, dot) : name;
+	}
+
+	private static String format(File file){
+		String name = file.getName();
+		int dot = name.lastIndexOf('.');
+		return dot >= 0 ? name.substring(dot + 1).toLowerCase(Locale.ENGLISH) : "png";
+	}
+
+	private BufferedImage read(File file){
+		try {
+			BufferedImage image = ImageIO.read(file);
+			if(image == null){
+				fail(file.getPath(), "is not a readable image");
+			}
+			return image;
+		} catch (IOException e) {
+			fail(file.getPath(), e.toString());
+			return null;
+		}
+	}
+
+	private void completed(long imagePixels, long start){
+		latency.record(System.nanoTime() - start);
+		pixels.addAndGet(imagePixels);
+		images.incrementAndGet();
+	}
+
+	private void fail(String path, String message){
+		failures.incrementAndGet();
+		System.err.println(path + " " + message);
+	}
+
+	private void printStatistics(long elapsed){
+		double seconds = elapsed / 1e9;
+		System.err.println(String.format("%d image(s), %d failed, %d pixels in %.2fs on %d thread(s)",
+				images.get(), failures.get(), pixels.get(), seconds, threads));
+		System.err.println(String.format("Throughput: %.2f images/s, %.2f megapixels/s",
+				images.get() / seconds, pixels.get() / seconds / 1e6));
+		if(latency.getCount() > 0){
+			System.err.println(String.format("Latency per image: mean=%.1fms, p50=%.1fms, p99=%.1fms, max=%.1fms",
+					latency.getMeanNanos() / 1e6, latency.getPercentileNanos(50.0) / 1e6,
+					latency.getPercentileNanos(99.0) / 1e6, latency.getMaxNanos() / 1e6));
+		}
+	}
+}
@@ -0,0 +1,52 @@
+package colormixer.test;
+import java.awt.Color;
+
+import colormixer.KMColorUtils;
+import colormixer.KMMetrics;
+
+/**
+ * Measures the cost of the KMMetrics instrumentation on the mixing hot path.
+ * Run once as is and once with -Dcolormixer.metrics=true and compare the reported
+ * time per mix, with metrics disabled the instrumentation should not be measurable.
+ */
+public class MetricsOverhead {
+
+	private static final int WARMUP_ROUNDS = 5;
+	private static final int ROUNDS = 10;
+	private static final int MIXES_PER_ROUND = 2000000;
+
+	public static void main(String[] args) {
+		System.out.println("Metrics enabled: " + KMMetrics.ENABLED);
+
+		Color[] palette = new Color[256];
+		for(int i=0; i<palette.length; i++){
+			palette[i] = new Color(i, (i * 7) & 0xFF, (i * 13) & 0xFF);
+		}
+
+		long checksum = 0;
+		for(int round=0; round<WARMUP_ROUNDS; round++){
+			checksum += run(palette);
+		}
+
+		long best = Long.MAX_VALUE;
+		for(int round=0; round<ROUNDS; round++){
+			long start = System.nanoTime();
+			checksum += run(palette);
+			best = Math.min(best, System.nanoTime() - start);
+		}
+
+		System.out.println(String.format("Best round: %.2f ns/mix (checksum %d)", (double)best / MIXES_PER_ROUND, checksum));
+		if(KMMetrics.ENABLED){
+			System.out.print(KMMetrics.report());
+		}
+	}
+
+	private static long run(Color[] palette){
+		long checksum = 0;
+		for(int i=0; i<MIXES_PER_ROUND; i++){
+			Color result = KMColorUtils.mix(palette[i & 0xFF], palette[(i >>> 8) & 0xFF]);
+			checksum += result.getRGB();
+		}
+		return checksum;
+	}
+}
@@ -0,0 +1,380 @@
+package colormixer.test;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.DisposeEvent;
+import org.eclipse.swt.events.DisposeListener;
+import org.eclipse.swt.events.MouseAdapter;
+import org.eclipse.swt.events.MouseEvent;
+import org.eclipse.swt.events.PaintEvent;
+import org.eclipse.swt.events.PaintListener;
+import org.eclipse.swt.graphics.Image;
+import org.eclipse.swt.graphics.ImageData;
+import org.eclipse.swt.graphics.PaletteData;
+import org.eclipse.swt.graphics.RGB;
+import org.eclipse.swt.graphics.Rectangle;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Canvas;
+import org.eclipse.swt.widgets.ColorDialog;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Shell;
+
+import colormixer.LatencyHistogram;
+import colormixer.MixingModel;
+import colormixer.MixingModels;
+import colormixer.Workers;
+
+/**
+ * Shows the KM mix of every pair of colors of a palette as an N x N grid, row i column j is the mix of
+ * swatch i and swatch j.  Click a swatch in the strip above the grid to change it, click a grid cell
+ * to see which swatches it mixes.
+ *
+ * The grid is computed on the shared Workers, which take turns at rows and mix a whole row with the bulk
+ * kernel of the selected MixingModel.  Finished rows are pushed to the UI through Display.asyncExec, but
+ * at most one refresh is queued at a time, so the UI thread copies every row finished since the last
+ * refresh in one go instead of handling one runnable per row.  Changing a swatch starts a new generation
+ * of the grid with a buffer of its own, workers of older generations give up and never touch it.  A
+ * swatch only appears in its row and its column, so when the previous grid is complete the new one is a
+ * copy of it with that row and column mixed again.  The status line shows the compute time of the last
+ * grid, how many UI refreshes it took and the frame time of painting the grid.
+ *
+ * java -cp bin:swt.jar colormixer.test.PaletteExplorer [size] [threads]
+ */
+public class PaletteExplorer {
+
+	private static final int STRIP_HEIGHT = 24;
+
+	private final int size;
+	private final int threads;
+	private final MixingModel model = MixingModels.get(MixingModels.KM);
+
+	// the palette, only changed on the UI thread
+	private final int[] palette;
+
+	// the grid being computed, replaced whenever the palette changes, null once the window is closed
+	private volatile Generation current;
+	private int generations;
+	private final AtomicBoolean refreshQueued = new AtomicBoolean();
+
+	// UI thread state
+	// the grid as shown, rows are copied from the current generation
+	private final int[] grid;
+	private final int[] rowsCopied;
+	private final PaletteData pixels = new PaletteData(0xFF0000, 0x00FF00, 0x0000FF);
+	private final ImageData gridData;
+	private final ImageData stripData;
+	private final LatencyHistogram frames = new LatencyHistogram();
+	private int refreshes;
+	private String selection = "";
+
+	private Display display;
+	private Shell shell;
+	private Label status;
+	private Canvas strip;
+	private Canvas canvas;
+	private Image gridImage;
+	private Image stripImage;
+
+	/**
+	 * Launch the application.
+	 * @param args [size] [threads]
+	 */
+	public static void main(String[] args) {
+		int size = args.length > 0 ? Math.max(1, Math.min(256, Integer.parseInt(args[0]))) : 64;
+		int threads = args.length > 1 ? Math.max(1, Integer.parseInt(args[1])) : Runtime.getRuntime().availableProcessors();
+		try {
+			PaletteExplorer window = new PaletteExplorer(size, threads);
+			window.open();
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+	}
+
+	public PaletteExplorer(int size, int threads){
+		this.size = size;
+		this.threads = threads;
+		palette = new int[size];
+		grid = new int[size * size];
+		rowsCopied = new int[size];
+		gridData = new ImageData(size, size, 24, pixels);
+		stripData = new ImageData(size, 1, 24, pixels);
+		for(int i=0; i<size; i++){
+			// a hue wheel at full saturation and brightness
+			palette[i] = java.awt.Color.HSBtoRGB((float)i / size, 1.0f, 1.0f) & 0xFFFFFF;
+		}
+	}
+
+	/**
+	 * Open the window.
+	 */
+	public void open() {
+		display = Display.getDefault();
+		createContents();
+		shell.open();
+		shell.layout();
+		recompute(-1);
+		while (!shell.isDisposed()) {
+			if (!display.readAndDispatch()) {
+				display.sleep();
+			}
+		}
+	}
+
+	/**
+	 * Create contents of the window.
+	 */
+	protected void createContents() {
+		shell = new Shell(display);
+		shell.setSize(800, 860);
+		shell.setText("Palette Explorer (" + size + "x" + size + ", " + model + ", " + threads + " threads)");
+		shell.setLayout(new GridLayout(1, false));
+
+		status = new Label(shell, SWT.NONE);
+		status.setLayoutData(new GridData(SWT.FILL, SWT.CENTER, true, false, 1, 1));
+		status.setText("Computing...");
+
+		strip = new Canvas(shell, SWT.NO_BACKGROUND);
+		GridData stripLayout = new GridData(SWT.FILL, SWT.CENTER, true, false, 1, 1);
+		stripLayout.heightHint = STRIP_HEIGHT;
+		strip.setLayoutData(stripLayout);
+		strip.addPaintListener(new PaintListener() {
+			@Override
+			public void paintControl(PaintEvent e) {
+				if (stripImage != null) {
+					Rectangle area = strip.getClientArea();
+					e.gc.drawImage(stripImage, 0, 0, size, 1, 0, 0, area.width, area.height);
+				}
+			}
+		});
+		strip.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseUp(MouseEvent e) {
+				int swatch = cell(e.x, strip.getClientArea().width);
+				ColorDialog colorDialog = new ColorDialog(shell);
+				int rgb = palette[swatch];
+				colorDialog.setRGB(new RGB((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF));
+				RGB picked = colorDialog.open();
+				if (picked != null) {
+					palette[swatch] = (picked.red << 16) | (picked.green << 8) | picked.blue;
+					recompute(swatch);
+				}
+			}
+		});
+
+		canvas = new Canvas(shell, SWT.NO_BACKGROUND | SWT.DOUBLE_BUFFERED);
+		canvas.setLayoutData(new GridData(SWT.FILL, SWT.FILL, true, true, 1, 1));
+		canvas.addPaintListener(new PaintListener() {
+			@Override
+			public void paintControl(PaintEvent e) {
+				long start = System.nanoTime();
+				Rectangle area = canvas.getClientArea();
+				if (gridImage != null) {
+					e.gc.drawImage(gridImage, 0, 0, size, size, 0, 0, area.width, area.height);
+				}
+				frames.record(System.nanoTime() - start);
+			}
+		});
+		canvas.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseUp(MouseEvent e) {
+				Rectangle area = canvas.getClientArea();
+				int row = cell(e.y, area.height);
+				int column = cell(e.x, area.width);
+				selection = String.format(" | swatch %d + swatch %d = #%06X", row, column, grid[row * size + column] & 0xFFFFFF);
+				updateStatus();
+			}
+		});
+
+		shell.addDisposeListener(new DisposeListener() {
+			@Override
+			public void widgetDisposed(DisposeEvent e) {
+				// the workers give up
+				current = null;
+				if (gridImage != null) {
+					gridImage.dispose();
+				}
+				if (stripImage != null) {
+					stripImage.dispose();
+				}
+			}
+		});
+	}
+
+	/*
+	 * Background computation
+	 */
+
+	/**
+	 * Starts computing the grid of the current palette, workers still busy with an older grid give up
+	 * @param swatch The swatch that changed, or -1 to compute the whole grid
+	 */
+	private void recompute(final int swatch){
+		final Generation previous = current;
+		final Generation generation = new Generation(++generations, palette.clone());
+		current = generation;
+		refreshes = 0;
+		stripData.setPixels(0, 0, size, generation.colors, 0);
+		replaceStripImage();
+		if(swatch >= 0 && previous != null && previous.isComplete()){
+			Workers.execute(new Runnable(){
+				@Override
+				public void run() {
+					update(generation, previous, swatch);
+				}
+			});
+			return;
+		}
+		for(int t=0; t<threads; t++){
+			Workers.execute(new Runnable(){
+				@Override
+				public void run() {
+					int[] row = new int[size];
+					int i;
+					while(current == generation && (i = generation.nextRow.getAndIncrement()) < size){
+						Arrays.fill(row, generation.colors[i]);
+						model.mix(row, 0, generation.colors, 0, generation.grid, i * size, size);
+						generation.rowDone(i);
+						queueRefresh();
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Computes a grid that differs from a complete previous grid in one swatch, only the row and the column
+	 * of that swatch are mixed again
+	 */
+	private void update(Generation generation, Generation previous, int swatch){
+		if(current != generation){
+			return;
+		}
+		int[] colors = generation.colors;
+		int[] cells = generation.grid;
+		System.arraycopy(previous.grid, 0, cells, 0, cells.length);
+		int[] changed = new int[size];
+		Arrays.fill(changed, colors[swatch]);
+		model.mix(changed, 0, colors, 0, cells, swatch * size, size);
+		int[] column = new int[size];
+		model.mix(colors, 0, changed, 0, column, 0, size);
+		for(int i=0; i<size; i++){
+			cells[i * size + swatch] = column[i];
+		}
+		for(int i=0; i<size; i++){
+			generation.rowDone(i);
+		}
+		queueRefresh();
+	}
+
+	/**
+	 * Queues a refresh of the grid on the UI thread unless one is queued already
+	 */
+	private void queueRefresh(){
+		if(refreshQueued.compareAndSet(false, true) && !display.isDisposed()){
+			display.asyncExec(new Runnable(){
+				@Override
+				public void run() {
+					refreshQueued.set(false);
+					refresh();
+				}
+			});
+		}
+	}
+
+	/*
+	 * UI thread
+	 */
+
+	/**
+	 * Copies every row finished since the last refresh into the grid image and repaints it
+	 */
+	private void refresh(){
+		if(canvas.isDisposed()){
+			return;
+		}
+		Generation generation = current;
+		boolean changed = false;
+		for(int i=0; i<size; i++){
+			if(generation.isRowDone(i) && rowsCopied[i] != generation.id){
+				System.arraycopy(generation.grid, i * size, grid, i * size, size);
+				gridData.setPixels(0, i, size, grid, i * size);
+				rowsCopied[i] = generation.id;
+				changed = true;
+			}
+		}
+		if(changed){
+			if(gridImage != null){
+				gridImage.dispose();
+			}
+			gridImage = new Image(display, gridData);
+			refreshes++;
+			canvas.redraw();
+		}
+		updateStatus();
+	}
+
+	private void replaceStripImage(){
+		if(stripImage != null){
+			stripImage.dispose();
+		}
+		stripImage = new Image(display, stripData);
+		strip.redraw();
+	}
+
+	private void updateStatus(){
+		Generation generation = current;
+		int rows = generation.rowsDone.get();
+		String compute = rows < size ? String.format("computing %d/%d rows", rows, size)
+				: String.format("compute %.1f ms", generation.computeNanos / 1e6);
+		status.setText(String.format("%s, %d UI refreshes, frame p50 %.2f ms p99 %.2f ms max %.2f ms%s",
+				compute, refreshes, frames.getPercentileNanos(50.0) / 1e6, frames.getPercentileNanos(99.0) / 1e6,
+				frames.getMaxNanos() / 1e6, selection));
+	}
+
+	// the row or column of the cell at a coordinate of a canvas of the given extent
+	private int cell(int coordinate, int extent){
+		return Math.max(0, Math.min(size - 1, coordinate * size / Math.max(1, extent)));
+	}
+
+	/**
+	 * One computation of the grid, for one state of the palette
+	 */
+	private static class Generation {
+		private final int id;
+		private final int[] colors;
+		// written only by the workers of this generation, a row is not changed once it is done
+		private final int[] grid;
+		private final AtomicIntegerArray done;
+		private final long start = System.nanoTime();
+		private final AtomicInteger nextRow = new AtomicInteger();
+		private final AtomicInteger rowsDone = new AtomicInteger();
+		private volatile long computeNanos;
+
+		private Generation(int id, int[] colors){
+			this.id = id;
+			this.colors = colors;
+			grid = new int[colors.length * colors.length];
+			done = new AtomicIntegerArray(colors.length);
+		}
+
+		private void rowDone(int row){
+			done.set(row, 1);
+			if(rowsDone.incrementAndGet() == colors.length){
+				computeNanos = System.nanoTime() - start;
+			}
+		}
+
+		private boolean isRowDone(int row){
+			return done.get(row) == 1;
+		}
+
+		private boolean isComplete(){
+			return rowsDone.get() == colors.length;
+		}
+	}
+}
@@ -0,0 +1,702 @@
+package colormixer.test;
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+
+import colormixer.ColorCodec;
+import colormixer.ColorSpace;
+import colormixer.ColorSpaceUtils;
+import colormixer.KMColor;
+import colormixer.KMColorUtils;
+import colormixer.KSBuffer;
+import colormixer.KSPyramid;
+import colormixer.RasterConverter;
+
+/**
+ * Correctness and performance regression checks for the mixing and color space code, run from the command line.
+ *
+ *   generate <dir>               writes a golden corpus of the current results into dir
+ *   verify <dir>                 compares the current results against the golden corpus in dir
+ *   properties [cases]           checks mixing properties on random colors, and that KSBuffer and KSPyramid
+ *                                return exactly the colors of KMColor, and that RasterConverter reads the
+ *                                colors of image.getRGB from every image type
+ *   benchmark <file> [options]   compares throughput against the baseline in file
+ *       --record                 (re)writes the baseline instead of comparing
+ *       --tolerance=<percent>    allowed throughput drop, 10 by default
+ *
+ * The corpus holds SHA-256 digests of the 256^3 single color round trips in both mixing modes, and sampled
+ * pairs, N-way mixes and ColorSpace conversions as ColorCodec batches.  The corpus committed in golden/ was
+ * generated from the original KMColor, KMColorUtils and ColorSpace where they existed (single color round
+ * trips, pairs, ColorSpace conversions) and from the current tree for what was added later (linear light,
+ * equal concentration N-way mixes, absorbances).  Every command exits with status 1 when a check fails,
+ * so it can be used as a build step.
+ */
+public class RegressionHarness {
+
+	// every random input is derived from this seed so runs are repeatable
+	private static final long SEED = 20131226L;
+
+	private static final int PAIRS = 4096;
+	private static final int MIXES = 2048;
+	private static final int MIX_ARITY = 6;
+	private static final int COLORSPACE_SAMPLES = 4096;
+
+	// largest channel difference accepted by the single color properties, getColor truncates
+	private static final int CHANNEL_TOLERANCE = 1;
+
+	// largest absolute difference accepted for values stored as floats
+	private static final double FLOAT_TOLERANCE = 1e-4;
+
+	// number of failures printed per check
+	private static final int REPORTED_FAILURES = 10;
+
+	private static final int WARMUP_ROUNDS = 5;
+	private static final int ROUNDS = 10;
+	private static final double DEFAULT_TOLERANCE = 10.0;
+
+	private static int failures = 0;
+
+	// keeps benchmark results alive
+	private static volatile long sink;
+
+	public static void main(String[] args) throws IOException {
+		if(args.length < 1){
+			usage();
+			return;
+		}
+		String command = args[0];
+		if(command.equals("generate") && args.length == 2){
+			generate(new File(args[1]));
+		} else if(command.equals("verify") && args.length == 2){
+			verify(new File(args[1]));
+		} else if(command.equals("properties") && args.length <= 2){
+			properties(args.length == 2 ? Integer.parseInt(args[1]) : 1000000);
+		} else if(command.equals("benchmark") && args.length >= 2){
+			boolean record = false;
+			double tolerance = DEFAULT_TOLERANCE;
+			for(int i=2; i<args.length; i++){
+				if(args[i].equals("--record")){
+					record = true;
+				} else if(args[i].startsWith("--tolerance=")){
+					tolerance = Double.parseDouble(args[i].substring("--tolerance=".length()));
+				} else {
+					usage();
+					return;
+				}
+			}
+			benchmark(new File(args[1]), record, tolerance);
+		} else {
+			usage();
+			return;
+		}
+		if(failures > 0){
+			System.out.println(failures + " check(s) failed");
+			System.exit(1);
+		}
+		System.out.println("All checks passed");
+	}
+
+	private static void usage(){
+		System.out.println("Usage: RegressionHarness generate <dir> | verify <dir> | properties [cases] | benchmark <file> [--record] [--tolerance=<percent>]");
+		System.exit(2);
+	}
+
+	/*
+	 * Golden corpus
+	 */
+
+	private static void generate(File directory) throws IOException {
+		if(!directory.isDirectory() && !directory.mkdirs()){
+			throw new IOException("Unable to create " + directory);
+		}
+		Properties digests = new Properties();
+		digests.setProperty("singles", digest(singles(false)));
+		digests.setProperty("singles-linear", digest(singles(true)));
+		FileOutputStream output = new FileOutputStream(new File(directory, "singles.properties"));
+		try {
+			digests.store(output, "SHA-256 of the RGB24 round trips of every 24 bit color");
+		} finally {
+			output.close();
+		}
+		writeRGB(new File(directory, "pairs.kmc"), pairs(randomColors(PAIRS * 3, SEED), false));
+		writeRGB(new File(directory, "pairs-linear.kmc"), pairs(randomColors(PAIRS * 3, SEED + 1), true));
+		writeRGB(new File(directory, "mixes.kmc"), mixes(randomColors(MIXES * (MIX_ARITY + 1), SEED + 2)));
+
+		int[] samples = randomColors(COLORSPACE_SAMPLES, SEED + 3);
+		writeRGB(new File(directory, "colorspace-rgb.kmc"), colorSpaceRGB(samples));
+		writeKS(new File(directory, "colorspace-xyz.kmc"), colorSpaceXYZ(samples), COLORSPACE_SAMPLES);
+		writeKS(new File(directory, "absorbance.kmc"), absorbances(samples), COLORSPACE_SAMPLES);
+		System.out.println("Wrote golden corpus to " + directory);
+	}
+
+	private static void verify(File directory) throws IOException {
+		Properties digests = new Properties();
+		FileInputStream input = new FileInputStream(new File(directory, "singles.properties"));
+		try {
+			digests.load(input);
+		} finally {
+			input.close();
+		}
+		compareDigest("singles", digests.getProperty("singles"), singles(false));
+		compareDigest("singles-linear", digests.getProperty("singles-linear"), singles(true));
+		compareRGB("pairs", readRGB(new File(directory, "pairs.kmc")), null);
+		compareRGB("pairs-linear", readRGB(new File(directory, "pairs-linear.kmc")), null);
+		compareRGB("mixes", readRGB(new File(directory, "mixes.kmc")), null);
+
+		int[] samples = readRGB(new File(directory, "colorspace-rgb.kmc"));
+		compareRGB("colorspace-rgb", samples, colorSpaceRGB(inputsOf(samples, 3)));
+		compareKS("colorspace-xyz", readKS(new File(directory, "colorspace-xyz.kmc")), colorSpaceXYZ(inputsOf(samples, 3)));
+		compareKS("absorbance", readKS(new File(directory, "absorbance.kmc")), absorbances(inputsOf(samples, 3)));
+	}
+
+	// round trip of every 24 bit color through a KMColor
+	private static int[] singles(boolean linearLight){
+		int[] results = new int[1 << 24];
+		for(int rgb=0; rgb<results.length; rgb++){
+			results[rgb] = new KMColor(new Color(rgb), linearLight).getColor().getRGB();
+		}
+		return results;
+	}
+
+	// records of a, b, mix(a, b)
+	private static int[] pairs(int[] records, boolean linearLight){
+		for(int i=0; i<records.length; i+=3){
+			Color a = new Color(records[i]);
+			Color b = new Color(records[i + 1]);
+			records[i + 2] = (linearLight ? KMColorUtils.mix(true, a, b) : KMColorUtils.mix(a, b)).getRGB();
+		}
+		return records;
+	}
+
+	// records of MIX_ARITY colors followed by their mix
+	private static int[] mixes(int[] records){
+		Color[] colors = new Color[MIX_ARITY];
+		for(int i=0; i<records.length; i+=MIX_ARITY + 1){
+			for(int j=0; j<MIX_ARITY; j++){
+				colors[j] = new Color(records[i + j]);
+			}
+			records[i + MIX_ARITY] = KMColorUtils.mix(colors).getRGB();
+		}
+		return records;
+	}
+
+	// records of the input color, its RYB color and its round trip through XYZ
+	private static int[] colorSpaceRGB(int[] samples){
+		int[] records = new int[samples.length * 3];
+		for(int i=0; i<samples.length; i++){
+			int rgb = samples[i];
+			ColorSpace color = ColorSpace.createNewColorSpaceFromRGB((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+			ColorSpace roundTrip = ColorSpace.createNewColorSpaceFromTristimulusXYZ(color.getTristimulusX(), color.getTristimulusY(), color.getTristimulusZ());
+			records[i * 3] = 0xFF000000 | (rgb & 0xFFFFFF);
+			records[i * 3 + 1] = pack(color.getRYB_R(), color.getRYB_Y(), color.getRYB_B());
+			records[i * 3 + 2] = pack(roundTrip.getRGB_R(), roundTrip.getRGB_G(), roundTrip.getRGB_B());
+		}
+		return records;
+	}
+
+	// tristimulus X, Y, Z triplets
+	private static double[] colorSpaceXYZ(int[] samples){
+		double[] xyz = new double[samples.length * 3];
+		for(int i=0; i<samples.length; i++){
+			int rgb = samples[i];
+			ColorSpace color = ColorSpace.createNewColorSpaceFromRGB((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF);
+			xyz[i * 3] = color.getTristimulusX();
+			xyz[i * 3 + 1] = color.getTristimulusY();
+			xyz[i * 3 + 2] = color.getTristimulusZ();
+		}
+		return xyz;
+	}
+
+	// KMColor absorbance triplets
+	private static double[] absorbances(int[] samples){
+		double[] ks = new double[samples.length * 3];
+		for(int i=0; i<samples.length; i++){
+			KMColor color = new KMColor(new Color(samples[i]));
+			ks[i * 3] = color.getAbsorbanceRed();
+			ks[i * 3 + 1] = color.getAbsorbanceGreen();
+			ks[i * 3 + 2] = color.getAbsorbanceBlue();
+		}
+		return ks;
+	}
+
+	// recomputes the mixes of a pairs or mixes corpus, the name tells which kind of records it holds
+	private static int[] recompute(String name, int[] golden){
+		int[] records = golden.clone();
+		if(name.equals("pairs")){
+			return pairs(records, false);
+		} else if(name.equals("pairs-linear")){
+			return pairs(records, true);
+		}
+		return mixes(records);
+	}
+
+	private static int[] inputsOf(int[] records, int recordSize){
+		int[] inputs = new int[records.length / recordSize];
+		for(int i=0; i<inputs.length; i++){
+			inputs[i] = records[i * recordSize];
+		}
+		return inputs;
+	}
+
+	private static void compareRGB(String name, int[] golden, int[] current){
+		if(current == null){
+			current = recompute(name, golden);
+		}
+		int mismatches = 0;
+		for(int i=0; i<golden.length; i++){
+			if((golden[i] & 0xFFFFFF) != (current[i] & 0xFFFFFF)){
+				if(mismatches++ < REPORTED_FAILURES){
+					System.out.println(String.format("  %s[%d]: expected %06X but was %06X", name, i, golden[i] & 0xFFFFFF, current[i] & 0xFFFFFF));
+				}
+			}
+		}
+		report(name, golden.length, mismatches);
+	}
+
+	private static void compareDigest(String name, String golden, int[] current){
+		String digest = digest(current);
+		if(!digest.equals(golden)){
+			System.out.println(String.format("  %s: expected digest %s but was %s", name, golden, digest));
+		}
+		report(name, 1, digest.equals(golden) ? 0 : 1);
+	}
+
+	private static void compareKS(String name, double[] golden, double[] current){
+		int mismatches = 0;
+		for(int i=0; i<golden.length; i++){
+			// values were stored as floats, compare relative to their magnitude
+			double tolerance = FLOAT_TOLERANCE * Math.max(1.0, Math.abs(current[i]));
+			if(!(Math.abs(golden[i] - current[i]) <= tolerance)){
+				if(mismatches++ < REPORTED_FAILURES){
+					System.out.println(String.format("  %s[%d]: expected %s but was %s", name, i, golden[i], current[i]));
+				}
+			}
+		}
+		report(name, golden.length, mismatches);
+	}
+
+	// SHA-256 of the colors as big endian RGB24 triplets, the layout of a ColorCodec RGB24 batch
+	private static String digest(int[] rgb){
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+		byte[] triplet = new byte[3];
+		for(int color : rgb){
+			triplet[0] = (byte)(color >> 16);
+			triplet[1] = (byte)(color >> 8);
+			triplet[2] = (byte)color;
+			digest.update(triplet);
+		}
+		StringBuilder hex = new StringBuilder();
+		for(byte b : digest.digest()){
+			hex.append(String.format("%02x", b & 0xFF));
+		}
+		return hex.toString();
+	}
+
+	private static int[] randomColors(int count, long seed){
+		Random random = new Random(seed);
+		int[] colors = new int[count];
+		for(int i=0; i<count; i++){
+			colors[i] = 0xFF000000 | random.nextInt(1 << 24);
+		}
+		return colors;
+	}
+
+	// ColorSpace components are whole numbers stored as doubles
+	private static int pack(double red, double green, double blue){
+		return 0xFF000000 | (((int)red & 0xFF) << 16) | (((int)green & 0xFF) << 8) | ((int)blue & 0xFF);
+	}
+
+	private static void writeRGB(File file, int[] rgb) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(ColorCodec.encodedSize(ColorCodec.Format.RGB24, rgb.length));
+		ColorCodec.encodeRGB(ColorCodec.Format.RGB24, rgb, 0, rgb.length, buffer);
+		write(file, buffer);
+	}
+
+	private static void writeKS(File file, double[] ks, int count) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(ColorCodec.encodedSize(ColorCodec.Format.KS32, count));
+		ColorCodec.encodeKS(ColorCodec.Format.KS32, ks, 0, count, buffer);
+		write(file, buffer);
+	}
+
+	private static int[] readRGB(File file) throws IOException {
+		ByteBuffer buffer = read(file);
+		int[] rgb = new int[ColorCodec.readCount(buffer.duplicate(), ColorCodec.Format.RGB24)];
+		ColorCodec.decodeRGB(buffer, rgb, 0, rgb.length);
+		return rgb;
+	}
+
+	private static double[] readKS(File file) throws IOException {
+		ByteBuffer buffer = read(file);
+		int count = ColorCodec.readCount(buffer.duplicate(), ColorCodec.Format.KS32);
+		double[] ks = new double[count * 3];
+		ColorCodec.decodeKS(buffer, ks, 0, count);
+		return ks;
+	}
+
+	private static void write(File file, ByteBuffer buffer) throws IOException {
+		buffer.flip();
+		FileOutputStream output = new FileOutputStream(file);
+		try {
+			FileChannel channel = output.getChannel();
+			while(buffer.hasRemaining()){
+				channel.write(buffer);
+			}
+		} finally {
+			output.close();
+		}
+	}
+
+	private static ByteBuffer read(File file) throws IOException {
+		FileInputStream input = new FileInputStream(file);
+		try {
+			FileChannel channel = input.getChannel();
+			ByteBuffer buffer = ByteBuffer.allocate((int)channel.size());
+			while(buffer.hasRemaining() && channel.read(buffer) >= 0){
+				// keep reading until the file is exhausted
+			}
+			buffer.flip();
+			return buffer;
+		} finally {
+			input.close();
+		}
+	}
+
+	/*
+	 * Properties
+	 */
+
+	private static void properties(int cases){
+		Random random = new Random(SEED);
+		int commutative = 0, identity = 0, gamut = 0, orderIndependent = 0, linearIdentity = 0, colorSpaceRoundTrip = 0;
+		int bufferRoundTrip = 0, bufferMix = 0, pyramidBase = 0;
+		Color[] colors = new Color[MIX_ARITY];
+		Color[] reversed = new Color[MIX_ARITY];
+		// pixel 0 holds a color and its mix with one other, pixel 1 every color mixed in so far
+		KSBuffer[] buffers = {new KSBuffer(2, KSBuffer.Layout.INTERLEAVED), new KSBuffer(2, KSBuffer.Layout.PLANAR)};
+		KSPyramid pyramid = new KSPyramid(2, 1);
+		int[] rendered = new int[2];
+		KMColor painted = new KMColor(Color.WHITE);
+		for(int i=0; i<cases; i++){
+			Color a = new Color(random.nextInt(1 << 24));
+			Color b = new Color(random.nextInt(1 << 24));
+
+			// mix(a, b) == mix(b, a)
+			Color ab = KMColorUtils.mix(a, b);
+			if(!ab.equals(KMColorUtils.mix(b, a))){
+				commutative = fail("commutativity", commutative, a + " and " + b);
+			}
+
+			// mix(a, a) == a within tolerance
+			if(distance(KMColorUtils.mix(a, a), a) > CHANNEL_TOLERANCE){
+				identity = fail("identity", identity, a + " mixed with itself is " + KMColorUtils.mix(a, a));
+			}
+			if(distance(KMColorUtils.mix(true, a, a), a) > CHANNEL_TOLERANCE){
+				linearIdentity = fail("linear light identity", linearIdentity, a + " mixed with itself is " + KMColorUtils.mix(true, a, a));
+			}
+
+			// every channel of a mix lies between the channels of the mixed colors
+			for(int j=0; j<MIX_ARITY; j++){
+				colors[j] = new Color(random.nextInt(1 << 24));
+				reversed[MIX_ARITY - 1 - j] = colors[j];
+			}
+			Color mix = KMColorUtils.mix(colors);
+			if(!inGamut(mix, colors)){
+				gamut = fail("gamut", gamut, mix + " is outside of its inputs");
+			}
+
+			// the N-way mix does not depend on the order of the colors
+			if(!mix.equals(KMColorUtils.mix(reversed))){
+				orderIndependent = fail("order independence", orderIndependent, mix + " differs from the reversed mix " + KMColorUtils.mix(reversed));
+			}
+
+			// RGB -> XYZ -> RGB
+			ColorSpace color = ColorSpace.createNewColorSpaceFromRGB(a.getRed(), a.getGreen(), a.getBlue());
+			ColorSpace roundTrip = ColorSpace.createNewColorSpaceFromTristimulusXYZ(color.getTristimulusX(), color.getTristimulusY(), color.getTristimulusZ());
+			double error = Math.max(Math.abs(roundTrip.getRGB_R() - a.getRed()), Math.max(Math.abs(roundTrip.getRGB_G() - a.getGreen()), Math.abs(roundTrip.getRGB_B() - a.getBlue())));
+			if(error > CHANNEL_TOLERANCE){
+				colorSpaceRoundTrip = fail("colorspace round trip", colorSpaceRoundTrip, a + " round trips to " + roundTrip.getRGB_R() + ", " + roundTrip.getRGB_G() + ", " + roundTrip.getRGB_B());
+			}
+
+			// KSBuffer and the base level of KSPyramid return what KMColor returns
+			int expected = new KMColor(a).getColor().getRGB();
+			painted.mix(b);
+			String readBack = null, mixed = null;
+			for(KSBuffer buffer : buffers){
+				buffer.setRGB(0, a.getRGB());
+				if(buffer.getRGB(0) != expected){
+					readBack = buffer.getLayout() + " reads back " + a + " as " + new Color(buffer.getRGB(0));
+				}
+				buffer.mixRGB(0, b.getRGB());
+				buffer.mixRGB(1, b.getRGB());
+				if(buffer.getRGB(0) != ab.getRGB() || buffer.getRGB(1) != painted.getColor().getRGB()){
+					mixed = buffer.getLayout() + " mixes " + a + " and " + b + " to " + new Color(buffer.getRGB(0)) + " instead of " + ab;
+				}
+			}
+			if(readBack != null){
+				bufferRoundTrip = fail("ksbuffer round trip", bufferRoundTrip, readBack);
+			}
+			if(mixed != null){
+				bufferMix = fail("ksbuffer mix", bufferMix, mixed);
+			}
+			pyramid.setRGB(0, 0, 1, 1, new int[]{a.getRGB()}, 0, 1);
+			pyramid.setKMColor(1, 0, painted);
+			pyramid.render(0, 0, 0, 2, 1, rendered, 0, 2);
+			if(rendered[0] != expected || rendered[1] != painted.getColor().getRGB()){
+				pyramidBase = fail("kspyramid base level", pyramidBase, a + " renders as " + new Color(rendered[0]));
+			}
+		}
+		for(KSBuffer buffer : buffers){
+			buffer.close();
+		}
+		report("commutativity", cases, commutative);
+		report("identity", cases, identity);
+		report("linear light identity", cases, linearIdentity);
+		report("gamut", cases, gamut);
+		report("order independence", cases, orderIndependent);
+		report("colorspace round trip", cases, colorSpaceRoundTrip);
+		report("ksbuffer round trip", cases, bufferRoundTrip);
+		report("ksbuffer mix", cases, bufferMix);
+		report("kspyramid base level", cases, pyramidBase);
+		report("raster rows", IMAGE_TYPES.length * IMAGE_WIDTH * IMAGE_HEIGHT, rasterRows(random));
+	}
+
+	// the image types read from the backing data, and ones that go through the color model
+	private static final int[] IMAGE_TYPES = {BufferedImage.TYPE_INT_RGB, BufferedImage.TYPE_INT_ARGB, BufferedImage.TYPE_INT_ARGB_PRE,
+		BufferedImage.TYPE_INT_BGR, BufferedImage.TYPE_3BYTE_BGR, BufferedImage.TYPE_4BYTE_ABGR, BufferedImage.TYPE_4BYTE_ABGR_PRE};
+	private static final int IMAGE_WIDTH = 64;
+	private static final int IMAGE_HEIGHT = 16;
+
+	// RasterConverter.readRow returns the RGB of image.getRGB for translucent pixels of every image type
+	private static int rasterRows(Random random){
+		int width = IMAGE_WIDTH, height = IMAGE_HEIGHT, failed = 0;
+		int[] row = new int[width];
+		for(int type : IMAGE_TYPES){
+			BufferedImage image = new BufferedImage(width, height, type);
+			for(int y=0; y<height; y++){
+				for(int x=0; x<width; x++){
+					image.setRGB(x, y, random.nextInt());
+				}
+			}
+			for(int y=0; y<height; y++){
+				RasterConverter.readRow(image, y, row);
+				for(int x=0; x<width; x++){
+					if((row[x] & 0xFFFFFF) != (image.getRGB(x, y) & 0xFFFFFF)){
+						failed = fail("raster rows", failed, "type " + type + " reads " + Integer.toHexString(row[x] & 0xFFFFFF)
+								+ " instead of " + Integer.toHexString(image.getRGB(x, y) & 0xFFFFFF));
+					}
+				}
+			}
+		}
+		return failed;
+	}
+
+	private static int fail(String name, int count, String message){
+		if(count < REPORTED_FAILURES){
+			System.out.println("  " + name + ": " + message);
+		}
+		return count + 1;
+	}
+
+	private static int distance(Color a, Color b){
+		int red = Math.abs(a.getRed() - b.getRed());
+		int green = Math.abs(a.getGreen() - b.getGreen());
+		int blue = Math.abs(a.getBlue() - b.getBlue());
+		return Math.max(red, Math.max(green, blue));
+	}
+
+	private static boolean inGamut(Color mix, Color[] colors){
+		int[] minimum = {255, 255, 255};
+		int[] maximum = {0, 0, 0};
+		for(Color color : colors){
+			int[] channels = {color.getRed(), color.getGreen(), color.getBlue()};
+			for(int channel=0; channel<3; channel++){
+				minimum[channel] = Math.min(minimum[channel], channels[channel]);
+				maximum[channel] = Math.max(maximum[channel], channels[channel]);
+			}
+		}
+		int[] channels = {mix.getRed(), mix.getGreen(), mix.getBlue()};
+		for(int channel=0; channel<3; channel++){
+			if(channels[channel] < minimum[channel] - CHANNEL_TOLERANCE || channels[channel] > maximum[channel] + CHANNEL_TOLERANCE){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void report(String name, int cases, int failed){
+		if(failed == 0){
+			System.out.println("PASS " + name + " (" + cases + " cases)");
+		} else {
+			System.out.println("FAIL " + name + " (" + failed + " of " + cases + " cases)");
+			failures++;
+		}
+	}
+
+	/*
+	 * Throughput
+	 */
+
+	private static void benchmark(File baselineFile, boolean record, double tolerance) throws IOException {
+		Properties baseline = new Properties();
+		if(!record){
+			if(!baselineFile.exists()){
+				System.out.println("No baseline at " + baselineFile + ", run with --record first");
+				failures++;
+				return;
+			}
+			FileInputStream input = new FileInputStream(baselineFile);
+			try {
+				baseline.load(input);
+			} finally {
+				input.close();
+			}
+		}
+
+		Properties measured = new Properties();
+		for(Benchmark benchmark : benchmarks()){
+			double throughput = benchmark.measure();
+			measured.setProperty(benchmark.name, Double.toString(throughput));
+			if(record){
+				System.out.println(String.format("%-28s %,14.0f ops/s", benchmark.name, throughput));
+				continue;
+			}
+			String expected = baseline.getProperty(benchmark.name);
+			if(expected == null){
+				System.out.println(String.format("%-28s %,14.0f ops/s (no baseline)", benchmark.name, throughput));
+				continue;
+			}
+			double minimum = Double.parseDouble(expected) * (1.0 - tolerance / 100.0);
+			double change = (throughput / Double.parseDouble(expected) - 1.0) * 100.0;
+			boolean passed = throughput >= minimum;
+			System.out.println(String.format("%s %-28s %,14.0f ops/s (%+.1f%%)", passed ? "PASS" : "FAIL", benchmark.name, throughput, change));
+			if(!passed){
+				failures++;
+			}
+		}
+
+		if(record){
+			FileOutputStream output = new FileOutputStream(baselineFile);
+			try {
+				measured.store(output, "RegressionHarness throughput baseline (ops/s)");
+			} finally {
+				output.close();
+			}
+			System.out.println("Recorded baseline to " + baselineFile);
+		}
+	}
+
+	private static List<Benchmark> benchmarks(){
+		final int[] pixels = randomColors(1 << 16, SEED);
+		final Color[] palette = new Color[256];
+		for(int i=0; i<palette.length; i++){
+			palette[i] = new Color(pixels[i]);
+		}
+		final double[] X = new double[pixels.length], Y = new double[pixels.length], Z = new double[pixels.length];
+
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+		benchmarks.add(new Benchmark("KMColorUtils.mix(a, b)", 1 << 20){
+			@Override
+			long run(){
+				long checksum = 0;
+				for(int i=0; i<operations; i++){
+					checksum += KMColorUtils.mix(palette[i & 0xFF], palette[(i >>> 8) & 0xFF]).getRGB();
+				}
+				return checksum;
+			}
+		});
+		benchmarks.add(new Benchmark("KMColorUtils.mix(colors)", 1 << 18){
+			@Override
+			long run(){
+				long checksum = 0;
+				Color[] colors = new Color[MIX_ARITY];
+				for(int i=0; i<operations; i++){
+					for(int j=0; j<MIX_ARITY; j++){
+						colors[j] = palette[(i + j * 37) & 0xFF];
+					}
+					checksum += KMColorUtils.mix(colors).getRGB();
+				}
+				return checksum;
+			}
+		});
+		benchmarks.add(new Benchmark("KMColorUtils.mix(int[])", pixels.length * 32){
+			@Override
+			long run(){
+				long checksum = 0;
+				for(int i=0; i<32; i++){
+					checksum += KMColorUtils.mix(pixels, 0, pixels.length).getRGB();
+				}
+				return checksum;
+			}
+		});
+		benchmarks.add(new Benchmark("ColorSpace.fromRGB", 1 << 18){
+			@Override
+			long run(){
+				long checksum = 0;
+				for(int i=0; i<operations; i++){
+					int rgb = pixels[i & 0xFFFF];
+					checksum += ColorSpace.createNewColorSpaceFromRGB((rgb >> 16) & 0xFF, (rgb >> 8) & 0xFF, rgb & 0xFF).getRYB_Y();
+				}
+				return checksum;
+			}
+		});
+		benchmarks.add(new Benchmark("ColorSpaceUtils.convert", pixels.length * 32){
+			@Override
+			long run(){
+				long checksum = 0;
+				for(int i=0; i<32; i++){
+					ColorSpaceUtils.convert(ColorSpaceUtils.Planes.XYZ, pixels, 0, pixels.length, X, Y, Z, 0);
+					checksum += (long)Y[i];
+				}
+				return checksum;
+			}
+		});
+		return benchmarks;
+	}
+
+	/**
+	 * A timed operation, the best of several rounds is reported to reduce noise
+	 */
+	private static abstract class Benchmark {
+		final String name;
+		final int operations;
+
+		Benchmark(String name, int operations){
+			this.name = name;
+			this.operations = operations;
+		}
+
+		// performs operations operations and returns a checksum so the work cannot be eliminated
+		abstract long run();
+
+		double measure(){
+			long checksum = 0;
+			for(int round=0; round<WARMUP_ROUNDS; round++){
+				checksum += run();
+			}
+			long best = Long.MAX_VALUE;
+			for(int round=0; round<ROUNDS; round++){
+				long start = System.nanoTime();
+				checksum += run();
+				best = Math.min(best, System.nanoTime() - start);
+			}
+			sink = checksum;
+			return operations * 1e9 / best;
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package colormixer.test;
+import java.util.Random;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.graphics.Color;
+import org.eclipse.swt.graphics.Font;
+import org.eclipse.swt.graphics.RGB;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Shell;
+import org.eclipse.wb.swt.SWTResourceManager;
+
+/**
+ * Churns SWTResourceManager with many more distinct colors than it keeps and checks that the number of
+ * live native handles stays bounded, that acquired colors are never disposed while referenced, that colors
+ * returned by getColor are never disposed by the churn, that bold fonts are disposed with their base font
+ * and that dispose() frees everything.  Needs a display, on a headless machine run it under Xvfb:
+ *
+ * xvfb-run java -cp bin:swt.jar colormixer.test.ResourceLeakCheck [picks]
+ *
+ * Exits with status 1 if a check fails.
+ */
+public class ResourceLeakCheck {
+
+	// colors picked with getColor, like the fixed colors of a form
+	private static final int FIXED_COLORS = 16;
+
+	public static void main(String[] args) {
+		int picks = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		Display display = Display.getDefault();
+		Shell shell = new Shell(display);
+		boolean passed = true;
+		try {
+			Random random = new Random(42);
+			int maxLive = 0;
+
+			// a held color, like a widget background, must survive any amount of churn
+			RGB heldRGB = new RGB(1, 2, 3);
+			Color held = SWTResourceManager.acquireColor(heldRGB);
+			shell.setBackground(held);
+			Color[] fixed = new Color[FIXED_COLORS];
+
+			long start = System.nanoTime();
+			RGB previous = null;
+			for(int i=0; i<picks; i++){
+				RGB rgb = new RGB(random.nextInt(256), random.nextInt(256), random.nextInt(256));
+				if((i & 1) == 0){
+					// swap a background like Tester does
+					SWTResourceManager.acquireColor(rgb);
+					if(previous != null){
+						SWTResourceManager.releaseColor(previous);
+					}
+					previous = rgb;
+				} else {
+					int f = random.nextInt(FIXED_COLORS);
+					Color color = SWTResourceManager.getColor(f, f, f);
+					if(fixed[f] == null){
+						fixed[f] = color;
+					}
+				}
+				maxLive = Math.max(maxLive, SWTResourceManager.getLiveHandleCount());
+			}
+			long elapsed = System.nanoTime() - start;
+
+			passed &= check("live handles stay bounded (max " + maxLive + ")", maxLive <= SWTResourceManager.COLOR_CAPACITY + FIXED_COLORS + 2);
+			passed &= check("held color is not disposed", !held.isDisposed());
+			boolean fixedLive = true;
+			for(Color color : fixed){
+				fixedLive &= color == null || !color.isDisposed();
+			}
+			passed &= check("colors from getColor are not disposed", fixedLive);
+
+			Font font = SWTResourceManager.getFont("Segoe UI", 12, SWT.NORMAL);
+			Font bold = SWTResourceManager.getBoldFont(font);
+			passed &= check("bold font is cached", SWTResourceManager.getBoldFont(font) == bold);
+			Font barred = SWTResourceManager.getFont("Segoe|UI", 12, SWT.NORMAL);
+			passed &= check("font names may contain '|'", SWTResourceManager.getFont("Segoe|UI", 12, SWT.NORMAL) == barred && barred != font);
+			SWTResourceManager.disposeFonts();
+			passed &= check("disposeFonts disposes bold fonts", bold.isDisposed());
+
+			SWTResourceManager.releaseColor(heldRGB);
+			if(previous != null){
+				SWTResourceManager.releaseColor(previous);
+			}
+			SWTResourceManager.dispose();
+			passed &= check("dispose frees every handle", SWTResourceManager.getLiveHandleCount() == 0);
+			passed &= check("dispose disposes held colors", held.isDisposed());
+			System.out.println(String.format("%d picks in %.1f ms", picks, elapsed / 1e6));
+		} finally {
+			shell.dispose();
+			display.dispose();
+		}
+		System.exit(passed ? 0 : 1);
+	}
+
+	private static boolean check(String name, boolean passed){
+		System.out.println((passed ? "PASS " : "FAIL ") + name);
+		return passed;
+	}
+}
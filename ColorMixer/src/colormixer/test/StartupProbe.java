@@ -0,0 +1,51 @@
+package colormixer.test;
+import java.awt.Color;
+
+import colormixer.ColorDifference;
+import colormixer.ColorSpace;
+import colormixer.KMColorUtils;
+
+/**
+ * Measures the time to first mix of a fresh JVM, the number that matters for short lived workers.
+ * Every step is timed the first time it runs, so class loading and table initialization are included.
+ * The packed mix runs first because it does not load AWT, the java.awt.Color mix that follows shows
+ * what loading AWT adds.  Run it with and without an AppCDS archive (see scripts/appcds.sh) to compare.
+ *
+ * java -cp bin:src/Jama-1.0.3.jar colormixer.test.StartupProbe
+ * java -XX:SharedArchiveFile=colormixer.jsa -cp bin:src/Jama-1.0.3.jar colormixer.test.StartupProbe
+ */
+public class StartupProbe {
+
+	public static void main(String[] args) {
+		long start = System.nanoTime();
+		int packed = KMColorUtils.mixRGB(new int[]{0x0000FF, 0xFFFF00}, 0, 2, false);
+		long packedMix = System.nanoTime();
+		int linear = KMColorUtils.mixRGB(new int[]{0x0000FF, 0xFFFF00}, 0, 2, true);
+		long linearMix = System.nanoTime();
+		ColorSpace color = ColorSpace.createNewColorSpaceFromRGB(255, 128, 0);
+		long colorSpace = System.nanoTime();
+		double[] L = new double[1], a = new double[1], b = new double[1];
+		ColorDifference.rgbToLab(new int[]{0xFF8000}, 0, 1, L, a, b, 0, ColorDifference.Accuracy.EXACT);
+		long lab = System.nanoTime();
+		Color awt = KMColorUtils.mix(Color.BLUE, Color.YELLOW);
+		long awtMix = System.nanoTime();
+
+		// keep the results alive and make sure both mix paths agree
+		if(awt.getRGB() != packed){
+			System.err.println("Packed and java.awt.Color mixes differ");
+			System.exit(1);
+		}
+		long checksum = packed + linear + (long)color.getTristimulusX() + (long)L[0];
+
+		System.out.println(String.format("First packed mix:        %8.2f ms", millis(start, packedMix)));
+		System.out.println(String.format("First linear light mix:  %8.2f ms", millis(packedMix, linearMix)));
+		System.out.println(String.format("First ColorSpace:        %8.2f ms", millis(linearMix, colorSpace)));
+		System.out.println(String.format("First Lab conversion:    %8.2f ms", millis(colorSpace, lab)));
+		System.out.println(String.format("First java.awt.Color mix:%8.2f ms", millis(lab, awtMix)));
+		System.out.println(String.format("Total:                   %8.2f ms (checksum %d)", millis(start, awtMix), checksum));
+	}
+
+	private static double millis(long from, long to){
+		return (to - from) / 1e6;
+	}
+}
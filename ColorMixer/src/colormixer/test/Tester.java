@@ -17,6 +17,9 @@ import colormixer.KMColor;
 
 public class Tester {
 
+	// the RGB of the pooled color a composite has as its background
+	private static final String BACKGROUND_RGB = "colormixer.backgroundRGB";
+
 	protected Shell shell;
 	
 	private boolean aSet = false;
@@ -48,6 +51,7 @@ public class Tester {
 				display.sleep();
 			}
 		}
+		SWTResourceManager.dispose();
 	}
 
 	/**
@@ -97,9 +101,8 @@ public class Tester {
 				colorDialog.setRGB(new RGB(128, 128, 128));
 				RGB rgb = colorDialog.open();
 				if (rgb != null) {
-					Color color = new Color(Display.getCurrent(), rgb.red, rgb.green, rgb.blue);
+					Color color = setBackground(colorAColorComposite, rgb);
 					if (color != null) {
-						colorAColorComposite.setBackground(color);
 						colorA.setText("R: " + color.getRed() + ", G: " + color.getGreen() + ", B: " + color.getBlue());
 						aSet = true;
 					}
@@ -117,9 +120,8 @@ public class Tester {
 				colorDialog.setRGB(new RGB(128, 128, 128));
 				RGB rgb = colorDialog.open();
 				if (rgb != null) {
-					Color color = new Color(Display.getCurrent(), rgb.red, rgb.green, rgb.blue);
+					Color color = setBackground(colorBColorComposite, rgb);
 					if (color != null) {
-						colorBColorComposite.setBackground(color);
 						colorB.setText("R: " + color.getRed() + ", G: " + color.getGreen() + ", B: " + color.getBlue());
 						bSet = true;
 					}
@@ -135,7 +137,22 @@ public class Tester {
 		KMColor mix = new KMColor(new java.awt.Color(colorA.getRed(), colorA.getGreen(), colorA.getBlue()));
 		mix.mix(new java.awt.Color(colorB.getRed(), colorB.getGreen(), colorB.getBlue()));
 		java.awt.Color result = mix.getColor();
-		resultColorComposite.setBackground(new Color(Display.getCurrent(), result.getRed(), result.getGreen(), result.getBlue()));
+		setBackground(resultColorComposite, new RGB(result.getRed(), result.getGreen(), result.getBlue()));
 		resultColor.setText("R: " + result.getRed() + ", G: " + result.getGreen() + ", B: " + result.getBlue());
 	}
+	
+	/**
+	 * Sets the background of a composite to a pooled color and releases the color it had before,
+	 * so picking colors does not leak a native handle per pick
+	 */
+	private static Color setBackground(Composite composite, RGB rgb){
+		RGB previous = (RGB)composite.getData(BACKGROUND_RGB);
+		Color color = SWTResourceManager.acquireColor(rgb);
+		composite.setBackground(color);
+		composite.setData(BACKGROUND_RGB, rgb);
+		if(previous != null){
+			SWTResourceManager.releaseColor(previous);
+		}
+		return color;
+	}
 }
@@ -0,0 +1,344 @@
+/*
+ * The MIT License (MIT)
+ * Copyright (c) 2013 Ben Holland
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package org.eclipse.wb.swt;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded, reference counted pool of OS resources such as SWT colors, fonts and images.
+ * <p>
+ * Resources are created on first request and kept in least recently used order. Once the pool holds more
+ * than its capacity, the least recently used resources that nobody holds a reference to are evicted and
+ * disposed. {@link #acquire(Object)} counts a reference that lasts until the matching {@link #release(Object)},
+ * so a resource that is in use is never disposed. When every entry is referenced the pool grows past its
+ * capacity and shrinks again as references are released.
+ * <p>
+ * {@link #get(Object)} has no matching release, so it pins the resource instead: a pinned resource is kept
+ * until {@link #clear()} and does not count against the capacity. Only resources that were acquired and
+ * released are ever evicted.
+ * <p>
+ * A resource derived from another one, e.g. a bold font from its base font, is keyed by that resource.
+ * {@link #removeDependents(Object)} disposes such resources once their base is disposed, see
+ * {@link #dependsOn(Object, Object)}.
+ * <p>
+ * The pool is thread safe, resources are created and disposed on the thread that causes it, which for SWT
+ * has to be the display thread. {@link #getLiveCount()} and {@link #getTotalLiveCount()} count the resources
+ * created and not yet disposed, so a handle leak shows up as a count that only grows.
+ * 
+ * @param <K>
+ *            the key a resource is created from
+ * @param <R>
+ *            the resource type
+ */
+public abstract class ResourcePool<K, R> {
+	/**
+	 * Live resources of all pools.
+	 */
+	private static final AtomicInteger TOTAL_LIVE = new AtomicInteger();
+	private final String m_name;
+	private final int m_capacity;
+	/**
+	 * Entries in least recently used order.
+	 */
+	private final LinkedHashMap<K, Entry<R>> m_entries = new LinkedHashMap<K, Entry<R>>(16, 0.75f, true);
+	private final AtomicInteger m_live = new AtomicInteger();
+	private int m_pinned;
+	private long m_created;
+	private long m_evicted;
+	/**
+	 * Creates an empty pool.
+	 * 
+	 * @param name
+	 *            the name of the pool, used in {@link #toString()}
+	 * @param capacity
+	 *            the number of acquired resources kept before unreferenced ones are evicted
+	 */
+	protected ResourcePool(String name, int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		}
+		m_name = name;
+		m_capacity = capacity;
+	}
+	/**
+	 * Creates the resource for a key.
+	 * 
+	 * @param key
+	 *            the key of the resource
+	 * @return the new resource, never <code>null</code>
+	 */
+	protected abstract R create(K key);
+	/**
+	 * Releases the OS resources of an evicted or cleared resource.
+	 * 
+	 * @param resource
+	 *            the resource to dispose
+	 */
+	protected abstract void dispose(R resource);
+	/**
+	 * Returns whether the resource of a key is derived from another resource and has to be disposed with it.
+	 * The default implementation returns <code>false</code>.
+	 * 
+	 * @param key
+	 *            the key of a pooled resource
+	 * @param resource
+	 *            a disposed resource
+	 * @return <code>true</code> if the key refers to the disposed resource
+	 */
+	protected boolean dependsOn(K key, Object resource) {
+		return false;
+	}
+	/**
+	 * Returns the resource for a key and pins it, creating it if necessary.
+	 * 
+	 * @param key
+	 *            the key of the resource
+	 * @return the resource, valid until the pool is cleared
+	 */
+	public R get(K key) {
+		return resource(key, false);
+	}
+	/**
+	 * Returns the resource for a key and counts a reference to it, creating it if necessary. The resource is
+	 * not evicted before every acquire is matched by a {@link #release(Object)}.
+	 * 
+	 * @param key
+	 *            the key of the resource
+	 * @return the resource
+	 */
+	public R acquire(K key) {
+		return resource(key, true);
+	}
+	/**
+	 * Releases a reference counted by {@link #acquire(Object)}.
+	 * 
+	 * @param key
+	 *            the key of the resource
+	 * @throws IllegalStateException
+	 *             if the key is not referenced
+	 */
+	public void release(K key) {
+		List<R> evicted;
+		synchronized (m_entries) {
+			Entry<R> entry = m_entries.get(key);
+			if (entry == null || entry.references == 0) {
+				throw new IllegalStateException(m_name + " resource " + key + " is not referenced");
+			}
+			entry.references--;
+			evicted = trim();
+		}
+		disposeAll(evicted);
+	}
+	/**
+	 * Disposes every resource, including referenced ones, and empties the pool.
+	 */
+	public void clear() {
+		List<R> cleared = new ArrayList<R>();
+		synchronized (m_entries) {
+			for (Entry<R> entry : m_entries.values()) {
+				cleared.add(entry.resource);
+			}
+			m_entries.clear();
+			m_pinned = 0;
+		}
+		disposeAll(cleared);
+	}
+	/**
+	 * Evicts and disposes every resource derived from a disposed resource, referenced and pinned ones
+	 * included, since their keys no longer identify a live resource.
+	 * 
+	 * @param resource
+	 *            the disposed resource
+	 */
+	public void removeDependents(Object resource) {
+		List<R> evicted = null;
+		synchronized (m_entries) {
+			for (Iterator<Map.Entry<K, Entry<R>>> iterator = m_entries.entrySet().iterator(); iterator.hasNext();) {
+				Map.Entry<K, Entry<R>> mapEntry = iterator.next();
+				if (dependsOn(mapEntry.getKey(), resource)) {
+					iterator.remove();
+					Entry<R> entry = mapEntry.getValue();
+					if (entry.pinned) {
+						m_pinned--;
+					}
+					if (evicted == null) {
+						evicted = new ArrayList<R>();
+					}
+					evicted.add(entry.resource);
+					m_evicted++;
+				}
+			}
+		}
+		disposeAll(evicted);
+	}
+	/**
+	 * @return the number of resources in the pool
+	 */
+	public int size() {
+		synchronized (m_entries) {
+			return m_entries.size();
+		}
+	}
+	/**
+	 * @return the number of acquired resources kept before unreferenced ones are evicted
+	 */
+	public int getCapacity() {
+		return m_capacity;
+	}
+	/**
+	 * @return the number of resources returned by {@link #get(Object)}, which are kept until the pool is cleared
+	 */
+	public int getPinnedCount() {
+		synchronized (m_entries) {
+			return m_pinned;
+		}
+	}
+	/**
+	 * @return the number of resources this pool created and has not disposed yet
+	 */
+	public int getLiveCount() {
+		return m_live.get();
+	}
+	/**
+	 * @return the number of resources all pools created and have not disposed yet
+	 */
+	public static int getTotalLiveCount() {
+		return TOTAL_LIVE.get();
+	}
+	/**
+	 * @return the number of resources created since the pool was created
+	 */
+	public long getCreatedCount() {
+		synchronized (m_entries) {
+			return m_created;
+		}
+	}
+	/**
+	 * @return the number of resources evicted since the pool was created
+	 */
+	public long getEvictedCount() {
+		synchronized (m_entries) {
+			return m_evicted;
+		}
+	}
+	@Override
+	public String toString() {
+		synchronized (m_entries) {
+			return m_name + ": size=" + m_entries.size() + "/" + m_capacity + ", pinned=" + m_pinned + ", live=" + m_live.get() + ", created=" + m_created
+					+ ", evicted=" + m_evicted;
+		}
+	}
+	////////////////////////////////////////////////////////////////////////////
+	//
+	// Implementation
+	//
+	////////////////////////////////////////////////////////////////////////////
+	/**
+	 * Returns the resource of a key with a reference counted or pinned, creating it if necessary. The entries
+	 * evicted to make room are disposed after the entries are unlocked, like in {@link #release(Object)}.
+	 */
+	private R resource(K key, boolean acquire) {
+		R resource;
+		List<R> evicted = null;
+		synchronized (m_entries) {
+			int size = m_entries.size();
+			resource = entry(key, acquire).resource;
+			if (m_entries.size() > size) {
+				// the new entry is referenced or pinned, so it is not evicted by its own insertion
+				evicted = trim();
+			}
+		}
+		disposeAll(evicted);
+		return resource;
+	}
+	/**
+	 * Returns the entry of a key with a reference counted or pinned, creating it if necessary. Must be called
+	 * with the entries locked.
+	 */
+	private Entry<R> entry(K key, boolean acquire) {
+		Entry<R> entry = m_entries.get(key);
+		if (entry == null) {
+			entry = new Entry<R>(create(key));
+			m_live.incrementAndGet();
+			TOTAL_LIVE.incrementAndGet();
+			m_created++;
+			m_entries.put(key, entry);
+		}
+		if (acquire) {
+			entry.references++;
+		} else if (!entry.pinned) {
+			entry.pinned = true;
+			m_pinned++;
+		}
+		return entry;
+	}
+	/**
+	 * Removes least recently used unpinned, unreferenced entries until the pool is within its capacity. Must
+	 * be called with the entries locked.
+	 * 
+	 * @return the resources to dispose
+	 */
+	private List<R> trim() {
+		List<R> evicted = null;
+		int excess = m_entries.size() - m_pinned - m_capacity;
+		for (Iterator<Entry<R>> iterator = m_entries.values().iterator(); excess > 0 && iterator.hasNext();) {
+			Entry<R> entry = iterator.next();
+			if (!entry.pinned && entry.references == 0) {
+				iterator.remove();
+				if (evicted == null) {
+					evicted = new ArrayList<R>();
+				}
+				evicted.add(entry.resource);
+				m_evicted++;
+				excess--;
+			}
+		}
+		return evicted;
+	}
+	private void disposeAll(List<R> resources) {
+		if (resources != null) {
+			for (R resource : resources) {
+				try {
+					dispose(resource);
+				} finally {
+					m_live.decrementAndGet();
+					TOTAL_LIVE.decrementAndGet();
+				}
+			}
+		}
+	}
+	/**
+	 * A pooled resource, the number of references to it and whether it is pinned.
+	 */
+	private static final class Entry<R> {
+		private final R resource;
+		private int references;
+		private boolean pinned;
+		private Entry(R resource) {
+			this.resource = resource;
+		}
+	}
+}
@@ -35,6 +35,13 @@ import org.eclipse.swt.widgets.Display;
  * operating system resources managed by cached objects when those objects and OS resources are no longer
  * needed (e.g. on application shutdown)
  * <p>
+ * Colors, images and fonts are kept in {@link ResourcePool}'s. A resource returned by a <code>get</code> method
+ * is kept until the <code>dispose</code> methods are called, as it may be attached to any number of widgets.
+ * Code that goes through many colors, e.g. a widget background that changes often, should use
+ * {@link #acquireColor(RGB)} and {@link #releaseColor(RGB)} instead, released colors are disposed once more than
+ * {@link #COLOR_CAPACITY} of them are cached. Bold fonts and decorated images are disposed with their base font
+ * or image. {@link #getLiveHandleCount()} returns the number of OS handles the pools hold.
+ * <p>
  * This class may be freely distributed as part of any application or plugin.
  * <p>
  * @author scheglov_ke
@@ -46,7 +53,20 @@ public class SWTResourceManager {
 	// Color
 	//
 	////////////////////////////////////////////////////////////////////////////
-	private static Map<RGB, Color> m_colorMap = new HashMap<RGB, Color>();
+	/**
+	 * The number of released colors kept before the least recently used ones are disposed.
+	 */
+	public static final int COLOR_CAPACITY = 256;
+	private static final ResourcePool<RGB, Color> m_colorPool = new ResourcePool<RGB, Color>("Colors", COLOR_CAPACITY) {
+		@Override
+		protected Color create(RGB rgb) {
+			return new Color(Display.getCurrent(), rgb);
+		}
+		@Override
+		protected void dispose(Color color) {
+			color.dispose();
+		}
+	};
 	/**
 	 * Returns the system {@link Color} matching the specific ID.
 	 * 
@@ -80,32 +100,64 @@ public class SWTResourceManager {
 	 * @return the {@link Color} matching the RGB value
 	 */
 	public static Color getColor(RGB rgb) {
-		Color color = m_colorMap.get(rgb);
-		if (color == null) {
-			Display display = Display.getCurrent();
-			color = new Color(display, rgb);
-			m_colorMap.put(rgb, color);
-		}
-		return color;
+		return m_colorPool.get(rgb);
+	}
+	/**
+	 * Returns a {@link Color} given its RGB value and keeps it from being disposed until
+	 * {@link #releaseColor(RGB)} is called for the same value.
+	 * 
+	 * @param rgb
+	 *            the {@link RGB} value of the color
+	 * @return the {@link Color} matching the RGB value
+	 */
+	public static Color acquireColor(RGB rgb) {
+		return m_colorPool.acquire(rgb);
+	}
+	/**
+	 * Releases a {@link Color} returned by {@link #acquireColor(RGB)}.
+	 * 
+	 * @param rgb
+	 *            the {@link RGB} value of the color
+	 */
+	public static void releaseColor(RGB rgb) {
+		m_colorPool.release(rgb);
 	}
 	/**
 	 * Dispose of all the cached {@link Color}'s.
 	 */
 	public static void disposeColors() {
-		for (Color color : m_colorMap.values()) {
-			color.dispose();
-		}
-		m_colorMap.clear();
+		m_colorPool.clear();
 	}
 	////////////////////////////////////////////////////////////////////////////
 	//
 	// Image
 	//
 	////////////////////////////////////////////////////////////////////////////
+	/**
+	 * The capacity of the loaded and, separately, of the decorated images pool.
+	 */
+	public static final int IMAGE_CAPACITY = 64;
 	/**
 	 * Maps image paths to images.
 	 */
-	private static Map<String, Image> m_imageMap = new HashMap<String, Image>();
+	private static final ResourcePool<ImageKey, Image> m_imagePool = new ResourcePool<ImageKey, Image>("Images", IMAGE_CAPACITY) {
+		@Override
+		protected Image create(ImageKey key) {
+			try {
+				if (key.clazz == null) {
+					return getImage(new FileInputStream(key.path));
+				}
+				return getImage(key.clazz.getResourceAsStream(key.path));
+			} catch (Exception e) {
+				return getMissingImage();
+			}
+		}
+		@Override
+		protected void dispose(Image image) {
+			image.dispose();
+			m_decoratedImagePool.removeDependents(image);
+		}
+	};
 	/**
 	 * Returns an {@link Image} encoded by the specified {@link InputStream}.
 	 * 
@@ -133,17 +185,7 @@ public class SWTResourceManager {
 	 * @return the {@link Image} stored in the file at the specified path
 	 */
 	public static Image getImage(String path) {
-		Image image = m_imageMap.get(path);
-		if (image == null) {
-			try {
-				image = getImage(new FileInputStream(path));
-				m_imageMap.put(path, image);
-			} catch (Exception e) {
-				image = getMissingImage();
-				m_imageMap.put(path, image);
-			}
-		}
-		return image;
+		return m_imagePool.get(new ImageKey(null, path));
 	}
 	/**
 	 * Returns an {@link Image} stored in the file at the specified path relative to the specified class.
@@ -155,18 +197,7 @@ public class SWTResourceManager {
 	 * @return the {@link Image} stored in the file at the specified path
 	 */
 	public static Image getImage(Class<?> clazz, String path) {
-		String key = clazz.getName() + '|' + path;
-		Image image = m_imageMap.get(key);
-		if (image == null) {
-			try {
-				image = getImage(clazz.getResourceAsStream(path));
-				m_imageMap.put(key, image);
-			} catch (Exception e) {
-				image = getMissingImage();
-				m_imageMap.put(key, image);
-			}
-		}
-		return image;
+		return m_imagePool.get(new ImageKey(clazz, path));
 	}
 	private static final int MISSING_IMAGE_SIZE = 10;
 	/**
@@ -203,10 +234,24 @@ public class SWTResourceManager {
 	 */
 	protected static final int LAST_CORNER_KEY = 5;
 	/**
-	 * Maps images to decorated images.
+	 * Maps base images, decorators and corners to decorated images.
 	 */
-	@SuppressWarnings("unchecked")
-	private static Map<Image, Map<Image, Image>>[] m_decoratedImageMap = new Map[LAST_CORNER_KEY];
+	private static final ResourcePool<DecorationKey, Image> m_decoratedImagePool = new ResourcePool<DecorationKey, Image>("Decorated images", IMAGE_CAPACITY) {
+		@Override
+		protected Image create(DecorationKey key) {
+			return decorate(key.baseImage, key.decorator, key.corner);
+		}
+		@Override
+		protected boolean dependsOn(DecorationKey key, Object image) {
+			return key.baseImage == image || key.decorator == image;
+		}
+		@Override
+		protected void dispose(Image image) {
+			image.dispose();
+			// a decorated image can be decorated again
+			removeDependents(image);
+		}
+	};
 	/**
 	 * Returns an {@link Image} composed of a base image decorated by another image.
 	 * 
@@ -234,39 +279,30 @@ public class SWTResourceManager {
 		if (corner <= 0 || corner >= LAST_CORNER_KEY) {
 			throw new IllegalArgumentException("Wrong decorate corner");
 		}
-		Map<Image, Map<Image, Image>> cornerDecoratedImageMap = m_decoratedImageMap[corner];
-		if (cornerDecoratedImageMap == null) {
-			cornerDecoratedImageMap = new HashMap<Image, Map<Image, Image>>();
-			m_decoratedImageMap[corner] = cornerDecoratedImageMap;
-		}
-		Map<Image, Image> decoratedMap = cornerDecoratedImageMap.get(baseImage);
-		if (decoratedMap == null) {
-			decoratedMap = new HashMap<Image, Image>();
-			cornerDecoratedImageMap.put(baseImage, decoratedMap);
-		}
+		return m_decoratedImagePool.get(new DecorationKey(baseImage, decorator, corner));
+	}
+	/**
+	 * Draws a decorated image.
+	 */
+	private static Image decorate(Image baseImage, Image decorator, int corner) {
+		Rectangle bib = baseImage.getBounds();
+		Rectangle dib = decorator.getBounds();
 		//
-		Image result = decoratedMap.get(decorator);
-		if (result == null) {
-			Rectangle bib = baseImage.getBounds();
-			Rectangle dib = decorator.getBounds();
-			//
-			result = new Image(Display.getCurrent(), bib.width, bib.height);
-			//
-			GC gc = new GC(result);
-			gc.drawImage(baseImage, 0, 0);
-			if (corner == TOP_LEFT) {
-				gc.drawImage(decorator, 0, 0);
-			} else if (corner == TOP_RIGHT) {
-				gc.drawImage(decorator, bib.width - dib.width, 0);
-			} else if (corner == BOTTOM_LEFT) {
-				gc.drawImage(decorator, 0, bib.height - dib.height);
-			} else if (corner == BOTTOM_RIGHT) {
-				gc.drawImage(decorator, bib.width - dib.width, bib.height - dib.height);
-			}
-			gc.dispose();
-			//
-			decoratedMap.put(decorator, result);
+		Image result = new Image(Display.getCurrent(), bib.width, bib.height);
+		//
+		GC gc = new GC(result);
+		gc.drawImage(baseImage, 0, 0);
+		if (corner == TOP_LEFT) {
+			gc.drawImage(decorator, 0, 0);
+		} else if (corner == TOP_RIGHT) {
+			gc.drawImage(decorator, bib.width - dib.width, 0);
+		} else if (corner == BOTTOM_LEFT) {
+			gc.drawImage(decorator, 0, bib.height - dib.height);
+		} else if (corner == BOTTOM_RIGHT) {
+			gc.drawImage(decorator, bib.width - dib.width, bib.height - dib.height);
 		}
+		gc.dispose();
+		//
 		return result;
 	}
 	/**
@@ -274,24 +310,60 @@ public class SWTResourceManager {
 	 */
 	public static void disposeImages() {
 		// dispose loaded images
-		{
-			for (Image image : m_imageMap.values()) {
-				image.dispose();
+		m_imagePool.clear();
+		// dispose decorated images
+		m_decoratedImagePool.clear();
+	}
+	/**
+	 * Identifies an image file or a class path resource.
+	 */
+	private static final class ImageKey {
+		private final Class<?> clazz;
+		private final String path;
+		private ImageKey(Class<?> clazz, String path) {
+			this.clazz = clazz;
+			this.path = path;
+		}
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof ImageKey)) {
+				return false;
 			}
-			m_imageMap.clear();
+			ImageKey other = (ImageKey) obj;
+			return clazz == other.clazz && path.equals(other.path);
 		}
-		// dispose decorated images
-		for (int i = 0; i < m_decoratedImageMap.length; i++) {
-			Map<Image, Map<Image, Image>> cornerDecoratedImageMap = m_decoratedImageMap[i];
-			if (cornerDecoratedImageMap != null) {
-				for (Map<Image, Image> decoratedMap : cornerDecoratedImageMap.values()) {
-					for (Image image : decoratedMap.values()) {
-						image.dispose();
-					}
-					decoratedMap.clear();
-				}
-				cornerDecoratedImageMap.clear();
+		@Override
+		public int hashCode() {
+			return 31 * (clazz == null ? 0 : clazz.hashCode()) + path.hashCode();
+		}
+		@Override
+		public String toString() {
+			return clazz == null ? path : clazz.getName() + '|' + path;
+		}
+	}
+	/**
+	 * Identifies a decorated image.
+	 */
+	private static final class DecorationKey {
+		private final Image baseImage;
+		private final Image decorator;
+		private final int corner;
+		private DecorationKey(Image baseImage, Image decorator, int corner) {
+			this.baseImage = baseImage;
+			this.decorator = decorator;
+			this.corner = corner;
+		}
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof DecorationKey)) {
+				return false;
 			}
+			DecorationKey other = (DecorationKey) obj;
+			return baseImage.equals(other.baseImage) && decorator.equals(other.decorator) && corner == other.corner;
+		}
+		@Override
+		public int hashCode() {
+			return 31 * (31 * baseImage.hashCode() + decorator.hashCode()) + corner;
 		}
 	}
 	////////////////////////////////////////////////////////////////////////////
@@ -300,13 +372,42 @@ public class SWTResourceManager {
 	//
 	////////////////////////////////////////////////////////////////////////////
 	/**
-	 * Maps font names to fonts.
+	 * The capacity of the fonts and, separately, of the bold fonts pool.
 	 */
-	private static Map<String, Font> m_fontMap = new HashMap<String, Font>();
+	public static final int FONT_CAPACITY = 32;
+	/**
+	 * Maps font names, sizes and styles to fonts.
+	 */
+	private static final ResourcePool<FontKey, Font> m_fontPool = new ResourcePool<FontKey, Font>("Fonts", FONT_CAPACITY) {
+		@Override
+		protected Font create(FontKey key) {
+			return createFont(key.name, key.size, key.style, key.strikeout, key.underline);
+		}
+		@Override
+		protected void dispose(Font font) {
+			font.dispose();
+			m_boldFontPool.removeDependents(font);
+		}
+	};
 	/**
 	 * Maps fonts to their bold versions.
 	 */
-	private static Map<Font, Font> m_fontToBoldFontMap = new HashMap<Font, Font>();
+	private static final ResourcePool<Font, Font> m_boldFontPool = new ResourcePool<Font, Font>("Bold fonts", FONT_CAPACITY) {
+		@Override
+		protected Font create(Font baseFont) {
+			FontData fontDatas[] = baseFont.getFontData();
+			FontData data = fontDatas[0];
+			return new Font(Display.getCurrent(), data.getName(), data.getHeight(), SWT.BOLD);
+		}
+		@Override
+		protected boolean dependsOn(Font baseFont, Object font) {
+			return baseFont == font;
+		}
+		@Override
+		protected void dispose(Font font) {
+			font.dispose();
+		}
+	};
 	/**
 	 * Returns a {@link Font} based on its name, height and style.
 	 * 
@@ -338,30 +439,64 @@ public class SWTResourceManager {
 	 * @return {@link Font} The font matching the name, height, style, strikeout and underline
 	 */
 	public static Font getFont(String name, int size, int style, boolean strikeout, boolean underline) {
-		String fontName = name + '|' + size + '|' + style + '|' + strikeout + '|' + underline;
-		Font font = m_fontMap.get(fontName);
-		if (font == null) {
-			FontData fontData = new FontData(name, size, style);
-			if (strikeout || underline) {
-				try {
-					Class<?> logFontClass = Class.forName("org.eclipse.swt.internal.win32.LOGFONT"); //$NON-NLS-1$
-					Object logFont = FontData.class.getField("data").get(fontData); //$NON-NLS-1$
-					if (logFont != null && logFontClass != null) {
-						if (strikeout) {
-							logFontClass.getField("lfStrikeOut").set(logFont, Byte.valueOf((byte) 1)); //$NON-NLS-1$
-						}
-						if (underline) {
-							logFontClass.getField("lfUnderline").set(logFont, Byte.valueOf((byte) 1)); //$NON-NLS-1$
-						}
+		return m_fontPool.get(new FontKey(name, size, style, strikeout, underline));
+	}
+	/**
+	 * Creates a {@link Font}.
+	 */
+	private static Font createFont(String name, int size, int style, boolean strikeout, boolean underline) {
+		FontData fontData = new FontData(name, size, style);
+		if (strikeout || underline) {
+			try {
+				Class<?> logFontClass = Class.forName("org.eclipse.swt.internal.win32.LOGFONT"); //$NON-NLS-1$
+				Object logFont = FontData.class.getField("data").get(fontData); //$NON-NLS-1$
+				if (logFont != null && logFontClass != null) {
+					if (strikeout) {
+						logFontClass.getField("lfStrikeOut").set(logFont, Byte.valueOf((byte) 1)); //$NON-NLS-1$
+					}
+					if (underline) {
+						logFontClass.getField("lfUnderline").set(logFont, Byte.valueOf((byte) 1)); //$NON-NLS-1$
 					}
-				} catch (Throwable e) {
-					System.err.println("Unable to set underline or strikeout" + " (probably on a non-Windows platform). " + e); //$NON-NLS-1$ //$NON-NLS-2$
 				}
+			} catch (Throwable e) {
+				System.err.println("Unable to set underline or strikeout" + " (probably on a non-Windows platform). " + e); //$NON-NLS-1$ //$NON-NLS-2$
 			}
-			font = new Font(Display.getCurrent(), fontData);
-			m_fontMap.put(fontName, font);
 		}
-		return font;
+		return new Font(Display.getCurrent(), fontData);
+	}
+	/**
+	 * Identifies a font by name, size, style, strikeout and underline.
+	 */
+	private static final class FontKey {
+		private final String name;
+		private final int size;
+		private final int style;
+		private final boolean strikeout;
+		private final boolean underline;
+		private FontKey(String name, int size, int style, boolean strikeout, boolean underline) {
+			this.name = name;
+			this.size = size;
+			this.style = style;
+			this.strikeout = strikeout;
+			this.underline = underline;
+		}
+		@Override
+		public boolean equals(Object obj) {
+			if (!(obj instanceof FontKey)) {
+				return false;
+			}
+			FontKey other = (FontKey) obj;
+			return name.equals(other.name) && size == other.size && style == other.style && strikeout == other.strikeout
+					&& underline == other.underline;
+		}
+		@Override
+		public int hashCode() {
+			return 31 * (31 * (31 * name.hashCode() + size) + style) + (strikeout ? 2 : 0) + (underline ? 1 : 0);
+		}
+		@Override
+		public String toString() {
+			return name + '|' + size + '|' + style + '|' + strikeout + '|' + underline;
+		}
 	}
 	/**
 	 * Returns a bold version of the given {@link Font}.
@@ -371,29 +506,16 @@ public class SWTResourceManager {
 	 * @return the bold version of the given {@link Font}
 	 */
 	public static Font getBoldFont(Font baseFont) {
-		Font font = m_fontToBoldFontMap.get(baseFont);
-		if (font == null) {
-			FontData fontDatas[] = baseFont.getFontData();
-			FontData data = fontDatas[0];
-			font = new Font(Display.getCurrent(), data.getName(), data.getHeight(), SWT.BOLD);
-			m_fontToBoldFontMap.put(baseFont, font);
-		}
-		return font;
+		return m_boldFontPool.get(baseFont);
 	}
 	/**
 	 * Dispose all of the cached {@link Font}'s.
 	 */
 	public static void disposeFonts() {
 		// clear fonts
-		for (Font font : m_fontMap.values()) {
-			font.dispose();
-		}
-		m_fontMap.clear();
+		m_fontPool.clear();
 		// clear bold fonts
-		for (Font font : m_fontToBoldFontMap.values()) {
-			font.dispose();
-		}
-		m_fontToBoldFontMap.clear();
+		m_boldFontPool.clear();
 	}
 	////////////////////////////////////////////////////////////////////////////
 	//
@@ -444,4 +566,13 @@ public class SWTResourceManager {
 		disposeFonts();
 		disposeCursors();
 	}
+	/**
+	 * Returns the number of colors, images and fonts this class created and has not disposed yet.
+	 * 
+	 * @return the number of live OS handles held by the resource pools
+	 */
+	public static int getLiveHandleCount() {
+		return m_colorPool.getLiveCount() + m_imagePool.getLiveCount() + m_decoratedImagePool.getLiveCount()
+				+ m_fontPool.getLiveCount() + m_boldFontPool.getLiveCount();
+	}
 }
\ No newline at end of file